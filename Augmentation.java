@@ -0,0 +1,96 @@
+package project6;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * Describes a value that a BST keeps for every subtree next to the height and the subtree size, such as the sum,
+ * minimum or maximum of something derived from the elements. The values form a monoid: combine must be associative
+ * and identity must not change the other value. combine is always called with the left part before the right part,
+ * so the aggregate of a range follows the order of the elements even when combine is not commutative.
+ *
+ * @author reemaamhaz
+ */
+public interface Augmentation<E, A>
+{
+    /**
+     * Returns the aggregate of no elements.
+     *
+     * @return the identity value
+     */
+    A identity();
+
+    /**
+     * Returns the aggregate of a single element.
+     *
+     * @param element - the element
+     * @return the value of the element
+     */
+    A lift(E element);
+
+    /**
+     * Combines the aggregates of two neighbouring runs of elements.
+     *
+     * @param left - the aggregate of the smaller elements
+     * @param right - the aggregate of the larger elements
+     * @return the aggregate of both runs
+     */
+    A combine(A left, A right);
+
+    /**
+     * Counts the elements.
+     *
+     * @return an augmentation that counts the elements
+     */
+    static <E> Augmentation<E, Long> count()
+    {
+        return sum(e -> 1L);
+    }
+
+    /**
+     * Adds up a number taken from every element.
+     *
+     * @param value - takes the number from an element
+     * @return an augmentation that sums the numbers
+     */
+    static <E> Augmentation<E, Long> sum(ToLongFunction<? super E> value)
+    {
+        return new Augmentation<E, Long>()
+        {
+            public Long identity() { return 0L; }
+            public Long lift(E element) { return value.applyAsLong(element); }
+            public Long combine(Long left, Long right) { return left + right; }
+        };
+    }
+
+    /**
+     * Keeps the smallest number taken from the elements, Long.MAX_VALUE when there are none.
+     *
+     * @param value - takes the number from an element
+     * @return an augmentation that keeps the minimum
+     */
+    static <E> Augmentation<E, Long> min(ToLongFunction<? super E> value)
+    {
+        return new Augmentation<E, Long>()
+        {
+            public Long identity() { return Long.MAX_VALUE; }
+            public Long lift(E element) { return value.applyAsLong(element); }
+            public Long combine(Long left, Long right) { return Math.min(left, right); }
+        };
+    }
+
+    /**
+     * Keeps the largest number taken from the elements, Long.MIN_VALUE when there are none.
+     *
+     * @param value - takes the number from an element
+     * @return an augmentation that keeps the maximum
+     */
+    static <E> Augmentation<E, Long> max(ToLongFunction<? super E> value)
+    {
+        return new Augmentation<E, Long>()
+        {
+            public Long identity() { return Long.MIN_VALUE; }
+            public Long lift(E element) { return value.applyAsLong(element); }
+            public Long combine(Long left, Long right) { return Math.max(left, right); }
+        };
+    }
+}
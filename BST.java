@@ -1,17 +1,27 @@
 package project6;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.NoSuchElementException;
 import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleBiFunction;
 import java.lang.Comparable;
 import java.lang.Math;
 import java.lang.UnsupportedOperationException;
 
 /**
  * A generic implementation of a binary search tree data structure that implements the Iterable and Cloneable interface and extends Comparable.
- * It contains two nested classes of the node and iterator. 
+ * It contains two nested classes of the node and iterator, and the Balancing enum that selects how the tree keeps its height down.
  * The elements are ordered using their natural ordering. This implementation provides guaranteed O(H). 
+ * With Balancing.NONE the height depends on the order the elements were added in; the other modes keep it O(log N)
+ * (amortised for SPLAY and SCAPEGOAT, expected for TREAP).
  * 
  * @author reemaamhaz
  */
@@ -20,6 +30,54 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
 
     private int size = 0; //the initial size of the tree (0)
     private Node<E> root = null; // the initial root of the tree (null)
+    private Augmentation<E, Object> augmentation = null; // the value kept for every subtree (null if none)
+    private Balancing balancing = Balancing.NONE; // how the tree keeps itself balanced
+    private Random priorities = null; // gives the nodes their priorities in TREAP mode
+    private ArrayList<Node<E>> splayPath = null; // the path reused by every splay in SPLAY mode
+    private Node<E> vine = null; // the flattened nodes still to be placed while a SCAPEGOAT subtree is rebuilt
+    private static final double ALPHA = 0.7; // a child holding more than this share of its parent's subtree is unbalanced
+    private Node<E> freeNodes = null; // removed nodes kept for reuse, linked through their left child
+    private int pooled = 0; // the number of nodes in freeNodes
+    private int poolCapacity = 0; // the most nodes freeNodes may hold, 0 turns pooling off
+    private int modCount = 0; // counts the changes to the elements of the tree
+    private int splayCount = 0; // counts the splays that moved nodes without changing the elements
+    private int hash = 0; // the cached hash code
+    private int hashModCount = -1; // the modCount the cached hash code was computed at
+    private ArrayList<ChangeFeed<E>> feeds = null; // the subscriptions to the changes of the tree (null if none)
+    private CountingBloomFilter<E> filter = null; // rules out most elements contains would not find (null if none)
+    private KeyPrefix<? super E> keyPrefix = null; // gives the prefixes compared before compareTo (null if none)
+    private int capacity = 0; // the most elements the tree keeps before evicting, 0 for no limit
+    private Eviction eviction = null; // which element is evicted (null if none)
+    private long timeToLive = 0; // nanoseconds an element stays in the tree in TTL mode
+    private Consumer<? super E> onEvict = null; // is told about every evicted element (null if none)
+    private Node<E> oldest = null; // the least recently used or soonest expiring node in LRU and TTL mode
+    private Node<E> newest = null; // the most recently used or last expiring node in LRU and TTL mode
+    private WorkloadRecorder<E> recorder = null; // records the calls to the tree (null if none)
+    private Object owner = new Object(); // marks the nodes this tree may change in place, others are copied first
+    private boolean shared = false; // whether some nodes may be shared with a snapshot
+
+    /**
+     * The ways the tree can keep itself balanced. Every mode keeps height and subtreeSize of every node valid,
+     * so get, height and the aggregates work the same in all of them.
+     *   NONE - no rebalancing, the shape of the tree follows the order the elements were added in
+     *   RED_BLACK - a left-leaning red-black tree, few rotations per update which suits write-heavy use
+     *   TREAP - random priorities kept in heap order, removing a node merges its two subtrees
+     *   SPLAY - every add, remove and contains moves the element to the root, so recently used elements are found fastest
+     *   SCAPEGOAT - no extra data in the nodes, a subtree whose subtreeSize shows one side is too heavy is rebuilt
+     *               into perfect balance from its own nodes
+     */
+    public enum Balancing { NONE, RED_BLACK, TREAP, SPLAY, SCAPEGOAT }
+
+    /**
+     * The ways a tree with a capacity picks the element to evict when an add takes it over the capacity.
+     *   SMALLEST - the smallest element
+     *   LARGEST - the largest element
+     *   LRU - the element that was added, added again or found by contains longest ago
+     *   TTL - elements are evicted once their time to live has passed, and the soonest expiring one when the tree is full;
+     *         adding an element again starts its time to live over
+     * LRU and TTL keep the nodes in a list in the order they will be evicted, linked through the nodes themselves.
+     */
+    public enum Eviction { SMALLEST, LARGEST, LRU, TTL }
 
     /** 
      * Constructs a new, empty tree, sorted according to the natural ordering of its elements. Starts with a null root.
@@ -39,6 +97,74 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
 		size = 0;
 	}
 
+    /**
+     * Constructs a new, empty tree that keeps an aggregate of every subtree next to its height and size,
+     * so that aggregate can answer range queries without visiting every element in the range.
+     *
+     * @param augmentation - describes the aggregate kept for every subtree
+     * @throws NullPointerException if augmentation is null
+     */
+    public BST(Augmentation<E, ?> augmentation)
+    {
+        this(Balancing.NONE, augmentation);
+    }
+
+    /**
+     * Constructs a new, empty tree that keeps itself balanced the given way.
+     *
+     * @param balancing - how the tree keeps itself balanced
+     * @throws NullPointerException if balancing is null
+     */
+    public BST(Balancing balancing)
+    {
+        if (balancing == null) throw new NullPointerException("No null balancing.");
+        setBalancing(balancing);
+    }
+
+    /**
+     * Constructs a new, empty tree that keeps itself balanced the given way and keeps an aggregate of every subtree.
+     *
+     * @param balancing - how the tree keeps itself balanced
+     * @param augmentation - describes the aggregate kept for every subtree
+     * @throws NullPointerException if balancing or augmentation is null
+     */
+    @SuppressWarnings("unchecked")
+    public BST(Balancing balancing, Augmentation<E, ?> augmentation)
+    {
+        if (balancing == null) throw new NullPointerException("No null balancing.");
+        if (augmentation == null) throw new NullPointerException("No null augmentation.");
+        setBalancing(balancing);
+        this.augmentation = (Augmentation<E, Object>) augmentation;
+    }
+
+    /**
+     * Sets the balancing mode and creates what the mode needs.
+     *
+     * @param balancing - how the tree keeps itself balanced
+     */
+    private void setBalancing(Balancing balancing)
+    {
+        this.balancing = balancing;
+        if (balancing == Balancing.TREAP)
+        {
+            priorities = new Random();
+        }
+        else if (balancing == Balancing.SPLAY)
+        {
+            splayPath = new ArrayList<Node<E>>();
+        }
+    }
+
+    /**
+     * Returns the way this tree keeps itself balanced.
+     *
+     * @return the balancing mode
+     */
+    public Balancing getBalancing()
+    {
+        return balancing;
+    }
+
     /**
      * Constructs a new tree containing the elements in the specified collection, sorted according to the natural ordering of its elements. 
      * All elements inserted into the tree must implement the Comparable interface. 
@@ -61,7 +187,8 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
      * It extends Comparable and implements Comparable. 
      * The node will carry the object data, reference to the left and right child,
      * its height, and the size of its subtree to keep track of its position and height for the purpose
-     * of modifying the tree by adding or removing nodes later. 
+     * of modifying the tree by adding or removing nodes later. When the tree has an augmentation the node
+     * also carries the aggregate of its subtree.
      */
     private static class Node<E extends Comparable<E>> implements Comparable<Node<E>>
     {
@@ -71,6 +198,14 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
         Node<E> right = null; // the right child
         int height = 1; //keep track of node's height
         int subtreeSize = 1; //essentially an index but also subtree size
+        Object summary = null; //the aggregate of the subtree, only kept when the tree has an augmentation
+        boolean red = false; //the colour of the link from the parent, only used in RED_BLACK mode
+        int priority = 0; //the heap priority, only used in TREAP mode
+        long prefix = 0; //the key prefix of data, only used when the tree has a KeyPrefix
+        Node<E> older = null; //the node evicted before this one, only used in LRU and TTL mode
+        Node<E> newer = null; //the node evicted after this one, only used in LRU and TTL mode
+        long expires = 0; //the System.nanoTime the element expires at, only used in TTL mode
+        Object owner = null; //the owner of the only tree that may change the node in place, see snapshot
 
         /**
          * Constructs node with data fields to store the data in the node
@@ -132,7 +267,10 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
                 postorderIterator(root, tree);
             }
  
-            inorderIterator(root, tree);
+            else
+            {
+                inorderIterator(root, tree);
+            }
         
         }
         
@@ -144,7 +282,7 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
          */
 		private void preorderIterator(Node<E> node, ArrayList<E> tree) {
 			if (node != null) {
-				tree.add(node.data);
+				if (!expired(node)) tree.add(node.data);
 				preorderIterator(node.left, tree);
 				preorderIterator(node.right, tree);
 			}
@@ -159,7 +297,7 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
         private void inorderIterator(Node<E> node, ArrayList<E> tree) {
 			if (node != null) {
 				inorderIterator(node.left, tree);
-				tree.add(node.data);
+				if (!expired(node)) tree.add(node.data);
 				inorderIterator(node.right, tree);
 			}
         }
@@ -174,7 +312,7 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
 			if (node != null) {
 				postorderIterator(node.left, tree);
 				postorderIterator(node.right, tree);
-				tree.add(node.data);
+				if (!expired(node)) tree.add(node.data);
 			}
         }
 
@@ -225,16 +363,46 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
     public boolean add(E data)
     {
         if (data == null) throw new NullPointerException("No null data.");
-        if (contains(data)) return false;
+        if (recorder != null) recorder.record(WorkloadRecorder.ADD, data);
+        if (eviction == Eviction.TTL) evictExpired();
+        boolean added = (balancing == Balancing.NONE) ? addUnbalanced(data) : addBalanced(data);
+        if (added)
+        {
+            modCount++;
+            if (filter != null) filter.add(data);
+            publish(ChangeFeed.Type.ADDED, data);
+            while (capacity > 0 && size > capacity)
+            {
+                evict(eviction == Eviction.SMALLEST ? first() : eviction == Eviction.LARGEST ? last() : oldest.data);
+            }
+        }
+        else if (eviction == Eviction.LRU || eviction == Eviction.TTL)
+        {
+            Node<E> node = find(data); // adding an element again counts as using it
+            node.expires = System.nanoTime() + timeToLive;
+            touch(node);
+        }
+        return added;
+    }
+
+    /**
+     * Adds the element without rebalancing at the position its value leads to from the root.
+     * 
+     * @param data - the content stored in the node
+     * @return boolean whether or not the node was added
+     */
+    private boolean addUnbalanced(E data)
+    {
+        if (find(data) != null) return false;
 
         if (root == null)
         {
-            root = new Node<E> (data);
+            root = newNode(data);
             size++;
             root.height = 1;
             return true;
         }
-        add(root, data);
+        root = add(root, data, prefixOf(data));
         return true;
     }
 
@@ -245,27 +413,29 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
      * 
      * @param data - is the content stored in the node
      * @param node - the current node
+     * @return the node, or its copy if it was shared with a snapshot
      * */
-    private void add(Node<E> node, E data)
+    private Node<E> add(Node<E> node, E data, long prefix)
     {
-        if(data.compareTo(node.data) < 0)  
+        node = own(node);
+        if(compare(data, prefix, node) < 0)  
         {
             if (node.left != null)
             {
                 int s = size;
-                add(node.left, data);
+                node.left = add(node.left, data, prefix);
                 if (s < size)
                 {
                     node.subtreeSize++;
                 }
-                updateHeight(node);
-                return;
+                updateNode(node);
+                return node;
             }
             //once its null add the element as a left child
-            Node<E> addElement = new Node<E>(data);
+            Node<E> addElement = newNode(data);
             size++; // increment size
             node.left = addElement;
-            updateHeight(node); // increment height
+            updateNode(node); // increment height
             node.subtreeSize++;
         }
         else
@@ -273,21 +443,22 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
             if (node.right != null)
             {
                 int s = size;
-                add(node.right, data);
+                node.right = add(node.right, data, prefix);
                 if (s < size)
                 {
                     node.subtreeSize++;
                 }
-                updateHeight(node);
-                return;
+                updateNode(node);
+                return node;
             }
             //once its null add the element as a right child
-            Node<E> addElement = new Node<E>(data);
+            Node<E> addElement = newNode(data);
             size++; // increment size
             node.right = addElement;
-            updateHeight(node); // increment height
+            updateNode(node); // increment height
             node.subtreeSize++;
         }
+        return node;
     } 
     /** 
      * Adds all of the elements in the specified collection to this tree.
@@ -301,9 +472,73 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
         {
             add(nodes); // sends to the add function to add the data to a node that gets added to the tree
         }
+        flushFeeds(); // the collection is delivered to the subscribers as one batch
         return false; // it was not added
     }
 
+    /**
+     * Subscribes to the changes of this tree. Every successful add and remove and every clear is buffered as an event
+     * and the buffered events are delivered to the listener in batches (see ChangeFeed).
+     * 
+     * @param listener - receives the batches of events
+     * @param capacity - the number of events buffered before a batch is delivered
+     * @param coalesce - true to cancel out changes that undo each other within a batch
+     * @return the subscription, close it to stop receiving changes
+     * @throws IllegalArgumentException if capacity is less than 1
+     */
+    public ChangeFeed<E> subscribe(ChangeFeed.Listener<E> listener, int capacity, boolean coalesce)
+    {
+        ChangeFeed<E> feed = new ChangeFeed<E>(this, listener, capacity, coalesce);
+        if (feeds == null)
+        {
+            feeds = new ArrayList<ChangeFeed<E>>();
+        }
+        feeds.add(feed);
+        return feed;
+    }
+
+    /**
+     * Stops sending changes to a subscription, called when the subscription is closed.
+     * 
+     * @param feed - the subscription
+     */
+    void unsubscribe(ChangeFeed<E> feed)
+    {
+        if (feeds == null) return;
+        feeds.remove(feed);
+        if (feeds.isEmpty())
+        {
+            feeds = null;
+        }
+    }
+
+    /**
+     * Buffers a change in every subscription.
+     * 
+     * @param type - what happened
+     * @param data - the element that was added or removed, null for a clear
+     */
+    private void publish(ChangeFeed.Type type, E data)
+    {
+        if (feeds == null) return;
+        for (int i = 0; i < feeds.size(); i++)
+        {
+            feeds.get(i).publish(type, data);
+        }
+    }
+
+    /**
+     * Delivers the buffered changes of every subscription.
+     */
+    private void flushFeeds()
+    {
+        if (feeds == null) return;
+        for (int i = 0; i < feeds.size(); i++)
+        {
+            feeds.get(i).flush();
+        }
+    }
+
     /**
      * Returns the least element in this tree greater than or equal to the given element, or null if there is no such element using a recursive helper function. 
      * 
@@ -314,19 +549,19 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
     {
         // if the data is null
         if (data == null) throw new NullPointerException("Cannot find ceiling of null.");
-        
+        if (recorder != null) recorder.record(WorkloadRecorder.CEILING, data);
 
             E d = (E)data;
     
             if (isEmpty()) return null;
             
-            if (contains(d))
+            if (lookup(d, false) != null)
             {
                 return d;
             }
             else 
             {
-                return ceiling(root, d); 
+                return ceiling(root, d, prefixOf(d)); 
             }
     }
 
@@ -338,676 +573,3034 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
      * @param data - the value we're finding the ceiling of
      * @return the least element in this tree greater than or equal to the given element
      */
-    private E ceiling(Node<E> node, E data)
+    private E ceiling(Node<E> node, E data, long prefix)
     {
         // if the data is null
         if (node == null) return null;
 
-        if (data.compareTo(node.data) > 0)
+        if (compare(data, prefix, node) > 0)
         {
-            return ceiling(node.right, data);
+            return ceiling(node.right, data, prefix);
         }
         else 
         {
-            E ceil = ceiling(node.left, data);
-            if (ceil == null)
-            {
-                return node.data;
-            }
-            return (ceil.compareTo(data) > 0)? ceil : node.data;   
+            E ceil = ceiling(node.left, data, prefix);
+            if (ceil != null) return ceil; // anything found on the left is at least data and below the node
+            if (!expired(node)) return node.data;
+            return ceiling(node.right, data, prefix); // the node has expired, the right subtree is all above data
         }
     }
 
     /**
      * Removes all nodes in the tree by setting the root to null. Tree is empty after this call.
+     * When node pooling is on the nodes are moved to the pool until it is full.
      */
     public void clear()
     {
+        if (poolCapacity > pooled)
+        {
+            releaseAll(root);
+        }
         root = null;
         size = 0; //if we clear out all elements we set the size to 0
+        oldest = null;
+        newest = null;
+        modCount++;
+        if (filter != null) filter.clear();
+        publish(ChangeFeed.Type.CLEARED, null);
+        flushFeeds();
     }
 
     /**
-     * Returns a shallow copy of this tree instance
-     * This operation should be O(N).
-     * 
-     * @return a BST that is a clone of the other BST
+     * Moves the nodes of a subtree to the pool until the pool is full. Left children are rotated up until
+     * the node has none, so the subtree is taken apart without recursion or a stack. Everything below a node
+     * the tree does not own is shared with a snapshot and is left alone.
+     *
+     * @param node - the root of the subtree
      */
-    public BST<E> clone()
+    private void releaseAll(Node<E> node)
     {
-        if (this.root == null) return null;
-        Node<E> cloNode = clone(this.root);
-        BST<E> cloneT =  new BST<E>(cloNode);
-        cloneT.size = this.size;
-
-        return cloneT;
+        while (node != null && node.owner == owner && pooled < poolCapacity)
+        {
+            if (node.left == null || node.left.owner != owner)
+            {
+                Node<E> next = node.right;
+                freeNode(node);
+                node = next;
+            }
+            else
+            {
+                Node<E> left = node.left;
+                node.left = left.right;
+                left.right = node;
+                node = left;
+            }
+        }
     }
 
     /**
-     * Recurses through the tree to be cloned and adds them in ascending order to the cloned tree
-     * 
-     * @param node - the current node
-     * @return the node that was cloned or null if the tree is null
+     * Turns on reuse of removed nodes. Up to capacity nodes dropped by remove and clear are kept in a free list
+     * of this tree and handed out again by add, so a tree that keeps removing and adding elements stops allocating
+     * once the pool has warmed up. The pool is not shared with other trees.
+     *
+     * @param capacity - the most nodes the pool may hold, 0 turns pooling off
+     * @throws IllegalArgumentException if capacity is negative
      */
-    private Node<E> clone(Node<E> node)
+    public void setNodePoolCapacity(int capacity)
     {
-        Node<E> temp = node;
-        if (temp == null) return null;
-        temp.data = node.data;
-        temp.left = clone(node.left);
-        temp.right = clone(node.right);
-        return temp;
+        if (capacity < 0) throw new IllegalArgumentException("The pool capacity cannot be negative.");
+        poolCapacity = capacity;
+        while (pooled > capacity)
+        {
+            freeNodes = freeNodes.left;
+            pooled--;
+        }
     }
 
     /**
-     * This method returns true if this tree contains the specified element. -- performance O(H)
-     * 
-     * @param o - the object we are trying to find
-     * @return true or false if the set contains element
-     * 
-     * @throws ClassCastException - if the specified object cannot be compared with the elements currently in the set
-     * @throws NullPointerException - if the specified element is null and this set uses natural ordering, or its comparator does not permit null elements
+     * Returns the number of nodes waiting in the pool to be reused.
+     *
+     * @return the number of pooled nodes
      */
-    public boolean contains(Object o)
+    public int getPooledNodeCount()
     {
-        if (o == null)  throw new NullPointerException("No null objects");
-        if (root == null) return false;
-
-        Node<E> node = root;
-        if (node == null) return false;
-        E objData = (E)o;
-
-        do {
-            if (objData.compareTo(node.data) == 0)
-            {
-                return true;
-            }
-            else if (objData.compareTo(node.data) < 0)
-            {
-                node = node.left;
-            }
-            else
-            {
-                node = node.right;
-            }
-        }while (node != null);
-
-        return false;
+        return pooled;
     }
+
     /**
-     * This method returns true if this collection contains all of the elements in the specified collection
-     * It iterates over the collection checking each element returned by iterator to see if it's in the tree.
-     * -- performance O(MH)
-     * 
-     * @return true or false if the collection contains all elements
-     * @param c - the collection of nodes we're adding to the tree
+     * Puts a membership filter in front of contains, so most elements that are not in the tree are ruled out without
+     * a search. The filter is emptied and filled with the elements of the tree, and from then on add, remove and clear
+     * keep it up to date. The elements must have a hashCode that agrees with their compareTo.
      * 
-     * @throws NullPointerException if one of the values is null or entire collection is null
+     * @param filter - the filter to use, null to stop using one
      */
-    public boolean containsAll(Collection<?> c)
+    public void setMembershipFilter(CountingBloomFilter<E> filter)
     {
-        if (c.isEmpty()) return false; //if there is nothing in the collection return false
-        for (Object o : c) // iterating through each object in the collection
+        if (filter != null)
         {
-            if (o == null) throw new NullPointerException("There is a null element in the tree");
-            if (!contains(o))
+            filter.clear();
+            Walk walk = new Walk(root);
+            for (Node<E> node = walk.next(); node != null; node = walk.next())
             {
-                return false; // when the collection does not contain the element return false
+                filter.add(node.data);
             }
         }
-        return true; // otherwise return true
+        this.filter = filter;
     }
 
     /**
-     * This method compares the specified object with this collection for equality. Walks through each set using the iterator. 
-     * 
-     * @param o - the object we are trying to equality to another object
-     * @return boolean true or false if the object equals an object in the collection.
+     * Returns the membership filter in front of contains, for example to read its false-positive rates.
      * 
-     * @throws ClassCastException if the data cannot be compared to the data in the collection 
+     * @return the filter or null if there is none
      */
-    public boolean equals(Object o)
+    public CountingBloomFilter<E> getMembershipFilter()
     {
-        if (this == null)
-            return false;
-        if (this == o)
-            return true;
-        if (o == null)
-            return false;
-        if (!(o instanceof BST))
-            return false;
-
-        BST<E> currBST = (BST<E>) o; // cast the list
+        return filter;
+    }
 
-        if (size != currBST.size)
-        {
-            return false;
-        }
+    /**
+     * Starts recording the add, remove, contains, ceiling and getRange calls made to this tree. Calls the tree makes
+     * to itself, such as the removes of an eviction, are not recorded. The recorder is not closed by the tree.
+     * 
+     * @param recorder - the recorder, null to stop recording
+     */
+    public void setRecorder(WorkloadRecorder<E> recorder)
+    {
+        this.recorder = recorder;
+    }
 
-        Node<E> thisPos = this.root; // starts at the head of this list
-        Node<E> oPos = currBST.root; // starts at the head of the list of the object
+    /**
+     * Records a call whose key came in as an Object, like the key of contains and remove.
+     * 
+     * @param op - the operation
+     * @param o - the key of the call
+     */
+    @SuppressWarnings("unchecked")
+    private void record(byte op, Object o)
+    {
+        recorder.record(op, (E) o);
+    }
 
-        while (thisPos != null)
+    /**
+     * Makes the tree compare key prefixes before calling compareTo, which saves reading long keys such as strings
+     * with a common start on most steps down the tree. The prefix of every element already in the tree is computed
+     * and kept in its node.
+     * 
+     * @param keyPrefix - gives the prefixes, null to only use compareTo
+     */
+    public void setKeyPrefix(KeyPrefix<? super E> keyPrefix)
+    {
+        this.keyPrefix = keyPrefix;
+        unshare(); // the prefixes of shared nodes belong to the snapshot
+        Walk walk = new Walk(root);
+        for (Node<E> node = walk.next(); node != null; node = walk.next())
         {
-            if (!thisPos.data.equals(oPos.data))
-            { // if an element in the list doesn't equal the one in the object list it returns false
-                return false;
-            }
-        
-            Iterator<E> thisIter = this.iterator();
-		    Iterator<E> oIter = currBST.iterator();
-            while (thisIter.hasNext()) {
-                if (!thisIter.next().equals(oIter.next())) {
-                    return false;
-                }
-            }
-            return true;
+            node.prefix = prefixOf(node.data);
         }
-
-        return true; // the lists match
     }
 
     /**
-	 * Finds the lowest/left-most element in the tree (Wrapper)
-	 * 
-     * @return E - lowest element in the tree 
-	 */
-    public E first()
-    {  
-        if (isEmpty()) throw new NoSuchElementException("Empty tree");
-
-        return first(root);
+     * Limits the number of elements. An add that takes the tree over the capacity evicts elements picked by the
+     * eviction policy until it fits again, which may be the element that was just added. Evicted elements are removed
+     * like any other, so change feeds see them as REMOVED, and are then handed to onEvict. Elements over a new,
+     * smaller capacity are evicted right away. -- performance O(log N) per eviction
+     * 
+     * @param capacity - the most elements the tree keeps, 0 for no limit
+     * @param eviction - SMALLEST, LARGEST or LRU, null together with capacity 0 to turn eviction off
+     * @param onEvict - is told about every evicted element, null if nothing needs to know
+     * @throws IllegalArgumentException if the capacity is negative, a capacity is given without a policy, or the
+     *                                  policy is TTL which needs setTimeToLive
+     */
+    public void setCapacity(int capacity, Eviction eviction, Consumer<? super E> onEvict)
+    {
+        if (eviction == Eviction.TTL) throw new IllegalArgumentException("TTL eviction needs a time to live, use setTimeToLive.");
+        setEviction(capacity, eviction, 0, onEvict);
     }
 
-     /**
-	 * Recursively finds the left-most non-null node in the tree
+    /**
+     * Makes every element expire a fixed time after it was added. Expired elements are evicted at the start of the
+     * next add or remove, or by evictExpired. Reads never change the tree, but contains, the navigation methods,
+     * the iterators, getRange and cursors treat an expired element as absent from the moment it expires; size,
+     * get, rank, the aggregates and diff still count it until it is evicted. Since all elements live equally long
+     * the nodes are kept in a list in the order they were added, which is the order they expire in, so finding
+     * the expired ones never scans the tree. An add that takes the tree over the capacity evicts the elements that
+     * would expire soonest.
      * 
-     * @param n - the current node 
-	 * @return the lowest element in the tree 
-	 */
-    private E first(Node<E> n)
-    {  
-        if (n.left == null) 
-            return n.data;
-
-        return first(n.left);
+     * @param timeToLive - how long an element stays in the tree
+     * @param unit - the unit of timeToLive
+     * @param capacity - the most elements the tree keeps, 0 for no limit
+     * @param onEvict - is told about every evicted element, null if nothing needs to know
+     * @throws NullPointerException if unit is null
+     * @throws IllegalArgumentException if timeToLive is not positive or the capacity is negative
+     */
+    public void setTimeToLive(long timeToLive, TimeUnit unit, int capacity, Consumer<? super E> onEvict)
+    {
+        if (unit == null) throw new NullPointerException("No null time unit.");
+        if (timeToLive <= 0) throw new IllegalArgumentException("The time to live must be positive.");
+        setEviction(capacity, Eviction.TTL, unit.toNanos(timeToLive), onEvict);
     }
 
     /**
-     * Returns the greatest element in this set less than or equal to the given element, or null if there is no such element.
-     * It calls a recursive helper function to traverse the tree. 
+     * Returns the capacity of the tree.
      * 
-     * @return the greatest element in this set less than or equal to the given element
+     * @return the most elements the tree keeps, 0 for no limit
      */
-    protected E floor(E data)
+    public int getCapacity()
     {
-        //if its null or empty return null
-        if (isEmpty()) return null;
-        if (data == null) return null;
-        //if the left side is greater than the data it is not the floor
-		if (first().compareTo(data) > 0) {
-			return null;
-		}
-		if (contains(data)) {
-			return data;
-		}
-        return floor(data, root);
+        return capacity;
     }
 
     /**
-     * Finds the the greatest element in this set less than or equal to the given element, or null if there is no such element
-     * by comparing the data to the root and recursing. 
+     * Returns how the tree picks the elements it evicts.
      * 
-     * @param data - the value that we are trying to find the greatest value less than or equal to
-     * @param node - the current node
-     * @return the value of the greatest element in this set less than or equal to the given element
+     * @return the eviction policy or null if the tree does not evict
      */
-    private E floor(E data, Node<E> node)
+    public Eviction getEviction()
     {
-        if (node == null) return null;
-
-        if (data.compareTo(node.data) > 0) 
-        {
-            if (node.right != null) 
-            {
-                if (node.right.data.compareTo(data) < 0) 
-                {
-					return floor(data, node.right);
-				}
-                else 
-                {
-					return node.data;
-				}
-			}
-            else 
-            {
-				return node.data;
-			}
-		}
-        else 
-        {
-			return floor(data, node.left);
-		}
+        return eviction;
     }
 
     /**
-     * Returns the element at the specified position in this tree (that uses 0 based indexing). The order of the indexed elements is the same as provided by this tree's iterator. 
-     *  
-     * @param i - index of element to be returned
-     * @return element of index
+     * Evicts the elements whose time to live has passed, starting from the one that expired first.
+     * 
+     * @return the number of evicted elements, 0 if the tree is not in TTL mode
      */
-    public E get(int i) // put index field in the node
+    public int evictExpired()
     {
-        return get(i, root);
+        if (eviction != Eviction.TTL) return 0;
+        long now = System.nanoTime();
+        int evicted = 0;
+        while (oldest != null && oldest.expires - now <= 0)
+        {
+            evict(oldest.data);
+            evicted++;
+        }
+        return evicted;
     }
 
     /**
-     * Returns the element at the specified position in this tree. Uses the size of the subtree as a way of indexing the elements. 
-     * If the value to be found is greater than the size of the left subtree we know it is in the right subtree or is the root. 
-     * This makes the pivot depending on the left subtree size and traveres down in order to index every node. 
-     *  
-     * @param i - index of element to be returned
-     * @param node - the current node
-     * @return element of index
+     * Returns whether the element of a node has outlived its time to live. Reads skip such a node as if it was
+     * already evicted, without changing the tree.
+     * 
+     * @param node - the node
+     * @return true if the tree is in TTL mode and the element has expired
      */
-    private E get (int i, Node<E> node)
+    private boolean expired(Node<E> node)
     {
-        if (node.left != null)
+        return eviction == Eviction.TTL && node.expires - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Sets up eviction and puts the elements already in the tree in the eviction order, in ascending order for LRU
+     * and all expiring a full time to live from now for TTL. Then evicts the elements over the capacity.
+     * 
+     * @param capacity - the most elements the tree keeps, 0 for no limit
+     * @param eviction - the eviction policy, null to turn eviction off
+     * @param timeToLive - nanoseconds an element stays in the tree in TTL mode
+     * @param onEvict - is told about every evicted element (null if none)
+     */
+    private void setEviction(int capacity, Eviction eviction, long timeToLive, Consumer<? super E> onEvict)
+    {
+        if (capacity < 0) throw new IllegalArgumentException("The capacity cannot be negative.");
+        if (capacity > 0 && eviction == null) throw new IllegalArgumentException("A capacity needs an eviction policy.");
+
+        while (oldest != null)
         {
-            if (node.left.subtreeSize <= i) // its too big to be on the left
-            {
-                i -= node.left.subtreeSize; //subtract the left side of the tree from the index you're looking for
-            }
-            else
-            {
-                return get(i, node.left); // recurse
-            }
+            unlink(oldest);
         }
-        
-        if(i == 0) // if it is the current node 
+        this.capacity = capacity;
+        this.eviction = eviction;
+        this.timeToLive = timeToLive;
+        this.onEvict = onEvict;
+
+        if (eviction == Eviction.LRU || eviction == Eviction.TTL)
         {
-            return node.data;
+            unshare(); // the eviction order is linked through the nodes
+            long expires = System.nanoTime() + timeToLive;
+            Walk walk = new Walk(root);
+            for (Node<E> node = walk.next(); node != null; node = walk.next())
+            {
+                node.expires = expires;
+                append(node);
+            }
         }
-        else
+        while (capacity > 0 && size > capacity)
         {
-            i--;
+            evict(eviction == Eviction.SMALLEST ? first() : eviction == Eviction.LARGEST ? last() : oldest.data);
         }
-        return get(i, node.right);
     }
+
     /**
-     * Returns a collection whose elements range from fromElement, inclusive, to toElement, inclusive recursively using a helper method.  
-     * This operation should be O(M) where M is the number of elements in the returned list.
+     * Removes an element picked for eviction and tells onEvict about it.
      * 
-     * @param start - the first element in the list
-     * @param end - the last element in the list
-     * @return an array list of the elements in the range from start to end
+     * @param victim - the element
      */
-    protected ArrayList<E> getRange(E start, E end)
+    private void evict(E victim)
     {
-        if (start == null) throw new NullPointerException("No null parameters");
-        if (end == null) throw new NullPointerException("No null parameters");
-
-        if(start.compareTo(end) > 0) throw new IllegalArgumentException("The start element cannot be bigger than end element");
-
-        ArrayList<E> arr = new ArrayList<E>(); 
+        delete(victim);
+        if (onEvict != null) onEvict.accept(victim);
+    }
 
-        findLast(root, arr, start, end);
-        
-        return arr;
+    /**
+     * Puts a node at the newest end of the eviction order.
+     * 
+     * @param node - a node that is not in the order
+     */
+    private void append(Node<E> node)
+    {
+        node.older = newest;
+        node.newer = null;
+        if (newest != null) newest.newer = node; else oldest = node;
+        newest = node;
     }
-    
+
     /**
-     * Finds all the elements from one starting value to a given value recusively so long as the comparison
-     * between the root and the start/end is less than/greater than 0(or equal) respectively, and adds them
-     * to an arraylist. 
+     * Takes a node out of the eviction order, nothing happens if it is not in it.
      * 
-     * @param node - the current node
-     * @param a - the arraylist to be filled with the nodes to be added
-     * @param start - the starting value
-     * @param end - the last value in the array
+     * @param node - the node
      */
-    private void findLast(Node<E> node, ArrayList a, E start, E end) 
-    { 
-        if (node == null) { 
-			return; 
-        } 
+    private void unlink(Node<E> node)
+    {
+        if (node.older != null) node.older.newer = node.newer;
+        else if (oldest == node) oldest = node.newer;
+        else return;
+        if (node.newer != null) node.newer.older = node.older; else newest = node.older;
+        node.older = null;
+        node.newer = null;
+    }
 
-        int startComp = start.compareTo(node.data);
-        int endComp = end.compareTo(node.data);
+    /**
+     * Moves a node that was just used to the newest end of the LRU order.
+     * 
+     * @param node - the node
+     */
+    private void touch(Node<E> node)
+    {
+        if (node == newest) return;
+        unlink(node);
+        append(node);
+    }
 
-        if (startComp < 0) 
-        { 
-			findLast(node.left, a, start, end);
-        } 
+    /**
+     * Returns a shallow copy of this tree instance, the nodes are copied but the elements are shared.
+     * This operation should be O(N).
+     * 
+     * @return a BST that is a clone of the other BST
+     */
+    public BST<E> clone()
+    {
+        if (this.root == null) return null;
+        BST<E> cloneT =  new BST<E>((Node<E>) null);
+        cloneT.root = cloneT.clone(this.root);
+        cloneT.size = this.size;
+        cloneT.augmentation = this.augmentation;
+        cloneT.setBalancing(this.balancing);
+        cloneT.poolCapacity = this.poolCapacity;
+        cloneT.filter = (this.filter == null) ? null : this.filter.copy();
+        cloneT.keyPrefix = this.keyPrefix;
+        cloneT.capacity = this.capacity;
+        cloneT.eviction = this.eviction;
+        cloneT.timeToLive = this.timeToLive;
+        cloneT.onEvict = this.onEvict;
+        for (Node<E> node = this.oldest; node != null; node = node.newer)
+        {
+            Node<E> copy = cloneT.find(node.data); // keeps the eviction order of this tree
+            copy.expires = node.expires;
+            cloneT.append(copy);
+        }
 
-        if (startComp <= 0 && endComp >= 0) 
-        { 
-			a.add(node.data);
-        } 
+        return cloneT;
+    }
 
-        if (endComp > 0)
+    /**
+     * Returns a snapshot of this tree that shares all of its nodes with it. Neither tree changes a node it shares:
+     * an add or remove copies the O(log N) nodes on its path (path copying) and links the copies in, so taking a
+     * snapshot is O(1) and both trees stay free to change. Nodes the two trees still share are the same objects,
+     * which lets diff between them skip whole subtrees. Setting a key prefix or LRU/TTL eviction later copies
+     * the shared nodes once.
+     * 
+     * @return a tree with the same elements, balancing, augmentation, key prefix and filter as this tree
+     * @throws IllegalStateException if the tree is in SPLAY mode, whose reads move nodes, or evicts in LRU or
+     *                               TTL order, which is linked through the nodes
+     */
+    public BST<E> snapshot()
+    {
+        if (balancing == Balancing.SPLAY) throw new IllegalStateException("A SPLAY tree cannot share its nodes.");
+        if (eviction == Eviction.LRU || eviction == Eviction.TTL)
         {
-            findLast(node.right, a, start, end);
+            throw new IllegalStateException("A tree with LRU or TTL eviction cannot share its nodes.");
         }
-    } 
 
-    /** 
-     * Returns the height of this tree. The height of a leaf is 1. 
-     * The height of the tree is the height of its root node
+        BST<E> snapshot = new BST<E>((Node<E>) null);
+        snapshot.root = root;
+        snapshot.size = size;
+        snapshot.augmentation = augmentation;
+        snapshot.setBalancing(balancing);
+        snapshot.poolCapacity = poolCapacity;
+        snapshot.filter = (filter == null) ? null : filter.copy();
+        snapshot.keyPrefix = keyPrefix;
+        snapshot.capacity = capacity;
+        snapshot.eviction = eviction;
+        snapshot.onEvict = onEvict;
+        snapshot.shared = true;
+        owner = new Object(); // from now on this tree copies the nodes it had before changing them
+        shared = true;
+        return snapshot;
+    }
+
+    /**
+     * Recurses through the tree to be cloned and copies every node into a node owned by this tree, so the two
+     * trees never share a node (a removed node may be reused by the pool of the tree it was removed from)
      * 
-     * @return the height of the tree or 0 if empty
+     * @param node - the current node
+     * @return the node that was cloned or null if the tree is null
      */
-    public int height()
+    private Node<E> clone(Node<E> node)
     {
-        if (root == null) return 0;
-        return root.height; 
+        if (node == null) return null;
+        Node<E> temp = new Node<E>(node.data);
+        temp.left = clone(node.left);
+        temp.right = clone(node.right);
+        temp.height = node.height;
+        temp.subtreeSize = node.subtreeSize;
+        temp.summary = node.summary;
+        temp.red = node.red;
+        temp.priority = node.priority;
+        temp.prefix = node.prefix;
+        temp.owner = owner;
+        return temp;
     }
 
-    /** 
-     * Updates the height of all nodes in a subtree based on their children
+    /**
+     * This method returns true if this tree contains the specified element. -- performance O(H)
+     * With a membership filter most elements that are not in the tree are answered in O(1) without a search.
      * 
-     * @param root - the root node
-     * @param height - the height of the node
-     * @return the height of a node
+     * @param o - the object we are trying to find
+     * @return true or false if the set contains element
+     * 
+     * @throws ClassCastException - if the specified object cannot be compared with the elements currently in the set
+     * @throws NullPointerException - if the specified element is null and this set uses natural ordering, or its comparator does not permit null elements
      */
-    private void updateHeight(Node<E> root)
+    public boolean contains(Object o)
     {
-        if (root == null) return;
-        if(root.left == null && root.right == null)  // if there are no children the height is 1
+        if (o == null)  throw new NullPointerException("No null objects");
+        if (recorder != null) record(WorkloadRecorder.CONTAINS, o);
+        Node<E> node = lookup(o, true);
+        if (node == null) return false;
+        if (eviction == Eviction.LRU) touch(node);
+        return true;
+    }
+
+    /**
+     * Does the work of contains without recording the call or counting it as a use of the element in LRU mode,
+     * for the methods of the tree that look up an element.
+     * 
+     * @param o - the object we are trying to find
+     * @param counted - true to count the lookup in the statistics of the membership filter, only done for contains
+     * @return the node holding the element or null if the tree does not contain it
+     */
+    private Node<E> lookup(Object o, boolean counted)
+    {
+        if (root == null) return null;
+        if (filter != null && !(counted ? filter.mightContain(o) : filter.probe(o)))
         {
-            root.height = 1;
+            return null; // certainly not in the tree, no search needed
         }
 
-        // 1 child on right
-        else if(root.left == null) // for every time right isn't null incremement height by 1, recurse down
+        @SuppressWarnings("unchecked")
+        E key = (E) o;
+        Node<E> node;
+        if (balancing == Balancing.SPLAY)
         {
-            root.height = root.right.height + 1;
+            node = (splay(key) == 0) ? root : null;
         }
-        // 1 child on left
-        else if(root.right == null)  // for every time left isn't null incremement height by 1, recurse down
+        else
         {
-            root.height = root.left.height + 1;
-        }
-        // 2 children - pick the max of the two 
-        else {
-            root.height = Math.max(root.left.height, root.right.height) + 1;
+            node = find(key);
         }
+        if (node == null && counted && filter != null) filter.recordFalsePositive();
+        return (node == null || expired(node)) ? null : node;
     }
 
     /**
-     * Finds the least element strictly greater than the given data or null if it DNE recursively by calling it's helper method
+     * Searches for the element from the root without changing the tree.
      * 
-     * @param data - the value to find the higher value of
-     * @return least element strictly greater than the given data or null
+     * @param objData - the element to find
+     * @return the node holding the element or null if the tree does not contain it
      */
-    protected E higher(E data)
+    private Node<E> find(E objData)
     {
-        if (data == null) throw new NullPointerException("No null params.");
-        E dataCast = (E)data;
 
-		if (last().compareTo(dataCast) <= 0) {
-			return null;
+        Node<E> node = root;
+        if (node == null) return null;
+        long prefix = prefixOf(objData);
+
+        do {
+            int comp = compare(objData, prefix, node);
+            if (comp == 0)
+            {
+                return node;
+            }
+            else if (comp < 0)
+            {
+                node = node.left;
+            }
+            else
+            {
+                node = node.right;
+            }
+        }while (node != null);
+
+        return null;
+    }
+    /**
+     * This method returns true if this collection contains all of the elements in the specified collection
+     * It iterates over the collection checking each element returned by iterator to see if it's in the tree.
+     * -- performance O(MH)
+     * 
+     * @return true or false if the collection contains all elements
+     * @param c - the collection of nodes we're adding to the tree
+     * 
+     * @throws NullPointerException if one of the values is null or entire collection is null
+     */
+    public boolean containsAll(Collection<?> c)
+    {
+        if (c.isEmpty()) return false; //if there is nothing in the collection return false
+        for (Object o : c) // iterating through each object in the collection
+        {
+            if (o == null) throw new NullPointerException("There is a null element in the tree");
+            if (!contains(o))
+            {
+                return false; // when the collection does not contain the element return false
+            }
         }
-        
-        return higher(dataCast, root);
+        return true; // otherwise return true
     }
 
     /**
-     * Finds the east element strictly greater than the given data starting at the root
+     * This method compares the specified object with this collection for equality. Walks through both trees in order
+     * at the same time and stops at the first pair of elements that differ, without copying either tree. The walks
+     * allocate one stack each, sized to the height of their tree, so the extra memory is O(height) rather than O(N).
      * 
-     * @param data - the data we want to find the higher value of
-     * @param curr - the current node
-     * @return the value higher than the given parameter or null
+     * @param o - the object we are trying to equality to another object
+     * @return boolean true or false if the object equals an object in the collection.
+     * 
+     * @throws ClassCastException if the data cannot be compared to the data in the collection 
      */
-    private E higher(E data, Node<E> curr)
+    @Override
+    public boolean equals(Object o)
     {
-        if (curr == null) return null;
-        //if the root is less than or equal to the data, go right
-        if (curr.data.compareTo(data) <= 0) 
+        if (this == o)
+            return true;
+        if (o == null)
+            return false;
+        if (!(o instanceof BST))
+            return false;
+
+        BST<E> currBST = (BST<E>) o; // cast the tree
+
+        if (size != currBST.size)
         {
-            return higher(data, curr.right);
+            return false;
         }
-        else 
+        if (hashModCount == modCount && currBST.hashModCount == currBST.modCount && hash != currBST.hash)
         {
-            E d = higher(data, curr.left);
-            if (d == null)
-            {
-                return curr.data;
+            return false; // both hash codes are already known and they differ
+        }
+
+        Walk thisWalk = new Walk(this.root); // walks this tree in order
+        Walk oWalk = currBST.new Walk(currBST.root); // walks the other tree in order
+        for (Node<E> thisPos = thisWalk.next(); thisPos != null; thisPos = thisWalk.next())
+        {
+            Node<E> oPos = oWalk.next();
+            if (!thisPos.data.equals(oPos.data))
+            { // if an element doesn't equal the one in the same position of the other tree it returns false
+                return false;
             }
-            return d; // going left
         }
+        return true; // the trees match
     }
 
     /**
-     * This method returns true if this collection contains no elements.
+     * Returns the hash code of this tree, the sum of the hash codes of its elements, so two trees that are equal
+     * have the same hash code. The hash code is cached and only computed again after the tree changed.
      * 
-     * @return boolean true or false if the collection does not have any elements
+     * @return the hash code of the tree
      */
-    protected boolean isEmpty()
+    @Override
+    public int hashCode()
     {
-        return size == 0;
+        if (hashModCount != modCount)
+        {
+            int h = 0;
+            Walk walk = new Walk(root);
+            for (Node<E> node = walk.next(); node != null; node = walk.next())
+            {
+                h += node.data.hashCode();
+            }
+            hash = h;
+            hashModCount = modCount;
+        }
+        return hash;
     }
 
     /**
-     * Finds the data of the largest node in the tree recursively by calling its helper function
-     * 
-     * @return the data of the largest node
+     * This private class walks the nodes of the tree in order one at a time. It keeps the path to the next node
+     * in an array sized to the height of the tree instead of copying the elements into a list like Iter does.
      */
-    protected E last()
+    private class Walk
     {
-        if (isEmpty())
-			return null;
+        private Node<E>[] stack; // the nodes whose data and right subtree are still to come
+        private int depth = 0; // the number of nodes on the stack
+
+        /**
+         * Constructs a walk over a subtree that starts at its smallest node.
+         * 
+         * @param start - the root of the subtree
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Walk(Node<E> start)
+        {
+            stack = (Node<E>[]) new Node[Math.max(1, height())];
+            pushLeft(start);
+        }
+
+        /**
+         * Pushes a node and its chain of left children.
+         * 
+         * @param node - the top of the chain
+         */
+        private void pushLeft(Node<E> node)
+        {
+            while (node != null)
+            {
+                if (depth == stack.length)
+                {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = node.left;
+            }
+        }
+
+        /**
+         * Returns the next node in order.
+         * 
+         * @return the next node or null when the walk is done
+         */
+        Node<E> next()
+        {
+            if (depth == 0) return null;
+            Node<E> node = stack[--depth];
+            stack[depth] = null;
+            pushLeft(node.right);
+            return node;
+        }
+    }
+
+    /**
+     * Returns the changes that turn this tree into the other tree: an ADDED event for every element that is only in
+     * the other tree and a REMOVED event for every element that is only in this tree, in ascending order. The changes
+     * are found lazily as the iterator advances. Both trees are walked in order together and whenever both reach the
+     * same node object the whole subtree below it is skipped, since it holds the same elements on both sides. A tree
+     * and its snapshot share every node no add or remove copied, so after d changes a full iteration between them
+     * takes O(d log N) time. Trees that share no nodes are merged element by element in O(N + M).
+     * 
+     * @param other - the tree to compare this tree to
+     * @return an iterator over the changes
+     * @throws NullPointerException if other is null
+     */
+    public Iterator<ChangeFeed.Event<E>> diff(BST<E> other)
+    {
+        if (other == null) throw new NullPointerException("No null trees.");
+        return new DiffIter(this.root, other.root);
+    }
+
+    /**
+     * This private, static class is the part of a tree that a diff has not reached yet, as a stack of entries
+     * in ascending order. An entry is either a whole subtree that has not been looked into or a single node.
+     */
+    private static class Frontier<E extends Comparable<E>>
+    {
+        Node<E>[] nodes; // the node of each entry
+        boolean[] whole; // true if the entry stands for the node's whole subtree, false for the node alone
+        int depth = 0; // the number of entries
+
+        /**
+         * Constructs a frontier holding one whole tree.
+         * 
+         * @param root - the root of the tree
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Frontier(Node<E> root)
+        {
+            int capacity = 2 * (root == null ? 1 : root.height) + 2;
+            nodes = (Node<E>[]) new Node[capacity];
+            whole = new boolean[capacity];
+            push(root, true);
+        }
+
+        /**
+         * Pushes an entry, nothing is pushed for an empty subtree.
+         * 
+         * @param node - the node of the entry
+         * @param isWhole - true for the whole subtree
+         */
+        void push(Node<E> node, boolean isWhole)
+        {
+            if (node == null) return;
+            if (depth == nodes.length)
+            {
+                nodes = Arrays.copyOf(nodes, depth * 2);
+                whole = Arrays.copyOf(whole, depth * 2);
+            }
+            nodes[depth] = node;
+            whole[depth++] = isWhole;
+        }
+
+        /**
+         * Replaces the whole subtree on top with its right subtree, its node and its left subtree, so the smallest part stays on top.
+         */
+        void expand()
+        {
+            Node<E> node = nodes[--depth];
+            nodes[depth] = null;
+            push(node.right, true);
+            push(node, false);
+            push(node.left, true);
+        }
+
+        /**
+         * Removes the top entry.
+         * 
+         * @return the node of the entry
+         */
+        Node<E> pop()
+        {
+            Node<E> node = nodes[--depth];
+            nodes[depth] = null;
+            return node;
+        }
+    }
+
+    /**
+     * This private class merges the frontiers of two trees to find the elements that are only in one of them.
+     */
+    private class DiffIter implements Iterator<ChangeFeed.Event<E>>
+    {
+        private final Frontier<E> from; // the tree the changes start from
+        private final Frontier<E> to; // the tree the changes lead to
+        private ChangeFeed.Event<E> next; // the next change or null when there are no more
+
+        /**
+         * Constructor that instantiates the iterator and finds the first change.
+         * 
+         * @param fromRoot - the root of the tree the changes start from
+         * @param toRoot - the root of the tree the changes lead to
+         */
+        DiffIter(Node<E> fromRoot, Node<E> toRoot)
+        {
+            from = new Frontier<E>(fromRoot);
+            to = new Frontier<E>(toRoot);
+            advance();
+        }
+
+        /**
+         * Moves to the next change. A subtree on top of both frontiers is dropped when it is the same node object,
+         * a whole subtree is looked into until both tops are single nodes (the taller one first, so the walks meet
+         * at shared nodes), and two single nodes are compared like in a merge.
+         */
+        private void advance()
+        {
+            next = null;
+            while (from.depth > 0 && to.depth > 0)
+            {
+                int f = from.depth - 1;
+                int t = to.depth - 1;
+                Node<E> a = from.nodes[f];
+                Node<E> b = to.nodes[t];
+                if (a == b && from.whole[f] == to.whole[t])
+                {
+                    from.pop(); // the same node object, so the same elements
+                    to.pop();
+                    continue;
+                }
+                if (from.whole[f] && (!to.whole[t] || a.height >= b.height))
+                {
+                    from.expand();
+                    continue;
+                }
+                if (to.whole[t])
+                {
+                    to.expand();
+                    continue;
+                }
+
+                int comp = a.data.compareTo(b.data);
+                if (comp == 0)
+                {
+                    from.pop();
+                    to.pop();
+                }
+                else if (comp < 0)
+                {
+                    next = new ChangeFeed.Event<E>(ChangeFeed.Type.REMOVED, from.pop().data);
+                    return;
+                }
+                else
+                {
+                    next = new ChangeFeed.Event<E>(ChangeFeed.Type.ADDED, to.pop().data);
+                    return;
+                }
+            }
+            // whatever is left is only in one of the trees
+            if (from.depth > 0)
+            {
+                next = new ChangeFeed.Event<E>(ChangeFeed.Type.REMOVED, single(from).data);
+            }
+            else if (to.depth > 0)
+            {
+                next = new ChangeFeed.Event<E>(ChangeFeed.Type.ADDED, single(to).data);
+            }
+        }
+
+        /**
+         * Looks into the top of a frontier until it is a single node and removes it.
+         * 
+         * @param frontier - the frontier
+         * @return the smallest node of the frontier
+         */
+        private Node<E> single(Frontier<E> frontier)
+        {
+            while (frontier.whole[frontier.depth - 1])
+            {
+                frontier.expand();
+            }
+            return frontier.pop();
+        }
+
+        /**
+         * This method returns whether there is another change
+         * 
+         * @return boolean true/false if there is another change
+         */
+        public boolean hasNext()
+        {
+            return next != null;
+        }
+
+        /**
+         * This method returns the next change
+         * 
+         * @throws NoSuchElementException if there is not another change
+         * @return the next change
+         */
+        public ChangeFeed.Event<E> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException("Next node does not exist.");
+            }
+            ChangeFeed.Event<E> result = next;
+            advance();
+            return result;
+        }
+    }
+
+    /**
+     * Returns a cursor over this tree that is not on any element yet.
+     * 
+     * @return a new cursor
+     */
+    public Cursor cursor()
+    {
+        return new Cursor();
+    }
+
+    /**
+     * A position in the tree that remembers the path from the root to the element it is on, so moving to a nearby
+     * element does not start over from the root. A seek climbs the path only as far as the first node whose subtree
+     * can hold the key and searches down from there, which takes time proportional to the log of the distance to
+     * the key in a balanced tree. next and prev step to the neighbouring elements in amortised O(1).
+     * 
+     * When the tree is changed other than through the cursor (or a splay in SPLAY mode moves its nodes), the path
+     * is dropped and the next move searches from the root again, starting from the element the cursor was on.
+     */
+    public class Cursor
+    {
+        private Node<E>[] path; // the nodes from the root down to the current node
+        private int[] lowAt; // for every node on the path the index of the closest ancestor it is right of, -1 if none
+        private int[] highAt; // for every node on the path the index of the closest ancestor it is left of, -1 if none
+        private int depth = 0; // the number of nodes on the path, 0 if the cursor is not on an element
+        private E at = null; // the element the cursor is on (null if none)
+        private int expectedModCount = modCount; // the modCount the path was built at
+        private int expectedSplayCount = splayCount; // the splayCount the path was built at
+
+        /**
+         * Constructs a cursor that is not on any element.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Cursor()
+        {
+            int capacity = Math.max(1, height() + 1);
+            path = (Node<E>[]) new Node[capacity];
+            lowAt = new int[capacity];
+            highAt = new int[capacity];
+        }
+
+        /**
+         * Returns the element the cursor is on.
+         * 
+         * @return the current element or null if the cursor is not on an element
+         */
+        public E get()
+        {
+            return at;
+        }
+
+        /**
+         * Moves the cursor to the element equal to the key. If the tree does not contain it the cursor moves to the
+         * least element greater than the key instead, as seekCeiling does.
+         * 
+         * @param key - the element to find
+         * @return true if the tree contains the key
+         * @throws NullPointerException if the key is null
+         */
+        public boolean seek(E key)
+        {
+            if (key == null) throw new NullPointerException("No null keys.");
+            int comp = locate(key);
+            if (comp > 0) toUpper();
+            boolean moved = skipExpired(true); // an expired key is not in the tree any more
+            return settle() && comp == 0 && !moved;
+        }
+
+        /**
+         * Moves the cursor to the least element greater than or equal to the key.
+         * 
+         * @param key - the key to find the ceiling of
+         * @return the ceiling or null if there is none, the cursor is then not on an element
+         * @throws NullPointerException if the key is null
+         */
+        public E seekCeiling(E key)
+        {
+            if (key == null) throw new NullPointerException("No null keys.");
+            if (locate(key) > 0) toUpper();
+            skipExpired(true);
+            settle();
+            return at;
+        }
+
+        /**
+         * Moves the cursor to the greatest element less than or equal to the key.
+         * 
+         * @param key - the key to find the floor of
+         * @return the floor or null if there is none, the cursor is then not on an element
+         * @throws NullPointerException if the key is null
+         */
+        public E seekFloor(E key)
+        {
+            if (key == null) throw new NullPointerException("No null keys.");
+            if (locate(key) < 0) toLower();
+            skipExpired(false);
+            settle();
+            return at;
+        }
+
+        /**
+         * Moves the cursor to the smallest element.
+         * 
+         * @return the smallest element or null if the tree is empty
+         */
+        public E first()
+        {
+            depth = 0;
+            expectedModCount = modCount;
+            expectedSplayCount = splayCount;
+            pushLeft(root);
+            skipExpired(true);
+            settle();
+            return at;
+        }
+
+        /**
+         * Moves the cursor to the largest element.
+         * 
+         * @return the largest element or null if the tree is empty
+         */
+        public E last()
+        {
+            depth = 0;
+            expectedModCount = modCount;
+            expectedSplayCount = splayCount;
+            pushRight(root);
+            skipExpired(false);
+            settle();
+            return at;
+        }
+
+        /**
+         * Moves the cursor to the next element.
+         * 
+         * @return the next element or null if the cursor was on the largest element or on no element
+         */
+        public E next()
+        {
+            if (at == null) return null;
+            if (isStale())
+            {
+                int comp = locate(at);
+                if (comp < 0 || depth == 0) // the element is gone and the search ended on its successor
+                {
+                    skipExpired(true);
+                    return settle() ? at : null;
+                }
+                if (comp > 0)
+                {
+                    toUpper();
+                    skipExpired(true);
+                    settle();
+                    return at;
+                }
+            }
+            stepUp();
+            skipExpired(true);
+            settle();
+            return at;
+        }
+
+        /**
+         * Moves the cursor to the previous element.
+         * 
+         * @return the previous element or null if the cursor was on the smallest element or on no element
+         */
+        public E prev()
+        {
+            if (at == null) return null;
+            if (isStale())
+            {
+                int comp = locate(at);
+                if (comp > 0 || depth == 0) // the element is gone and the search ended on its predecessor
+                {
+                    skipExpired(false);
+                    return settle() ? at : null;
+                }
+                if (comp < 0)
+                {
+                    toLower();
+                    skipExpired(false);
+                    settle();
+                    return at;
+                }
+            }
+            stepDown();
+            skipExpired(false);
+            settle();
+            return at;
+        }
+
+        /**
+         * Removes the element the cursor is on from the tree and moves the cursor to the next element, so
+         * a filtering loop is written as: for (E e = c.first(); e != null; ) e = keep(e) ? c.next() : c.remove();
+         * 
+         * @return the next element or null if the removed element was the largest
+         * @throws IllegalStateException if the cursor is not on an element or the element was already removed
+         */
+        public E remove()
+        {
+            if (at == null) throw new IllegalStateException("The cursor is not on an element.");
+            E removed = at;
+            if (!BST.this.remove(removed))
+            {
+                throw new IllegalStateException("The element was already removed from the tree.");
+            }
+            // removing may move the nodes around the element, so the successor is searched for from the root
+            depth = 0;
+            at = null;
+            return seekCeiling(removed);
+        }
+
+        /**
+         * Checks if the tree was changed since the path was built.
+         * 
+         * @return true if the path can no longer be used
+         */
+        private boolean isStale()
+        {
+            return expectedModCount != modCount || expectedSplayCount != splayCount;
+        }
+
+        /**
+         * Searches for the key starting from the lowest node on the path whose subtree can hold it. The search ends
+         * on the node with the key or on the node below which the key would be added.
+         * 
+         * @param key - the key to search for
+         * @return the key compared to the data of the node the search ended on, 0 if the tree is empty
+         */
+        private int locate(E key)
+        {
+            if (isStale())
+            {
+                depth = 0;
+                expectedModCount = modCount;
+                expectedSplayCount = splayCount;
+            }
+            if (depth == 0)
+            {
+                if (root == null) return 0;
+                push(root);
+            }
+            long prefix = prefixOf(key);
+            // climb until the key is between the bounds of the subtree on top of the path
+            while (depth > 1)
+            {
+                int top = depth - 1;
+                if (lowAt[top] >= 0 && compare(key, prefix, path[lowAt[top]]) <= 0)
+                {
+                    depth = lowAt[top] + 1; // the key is not right of that ancestor, so it is at or left of it
+                }
+                else if (highAt[top] >= 0 && compare(key, prefix, path[highAt[top]]) >= 0)
+                {
+                    depth = highAt[top] + 1; // the key is not left of that ancestor, so it is at or right of it
+                }
+                else
+                {
+                    break;
+                }
+            }
+            while (true)
+            {
+                Node<E> node = path[depth - 1];
+                int comp = compare(key, prefix, node);
+                Node<E> child = (comp < 0) ? node.left : node.right;
+                if (comp == 0 || child == null) return comp;
+                push(child);
+            }
+        }
+
+        /**
+         * Moves the path to the next node in order, or to no node after the largest.
+         */
+        private void stepUp()
+        {
+            Node<E> node = path[depth - 1];
+            if (node.right != null)
+            {
+                pushLeft(node.right);
+            }
+            else
+            {
+                toUpper();
+            }
+        }
+
+        /**
+         * Moves the path to the previous node in order, or to no node before the smallest.
+         */
+        private void stepDown()
+        {
+            Node<E> node = path[depth - 1];
+            if (node.left != null)
+            {
+                pushRight(node.left);
+            }
+            else
+            {
+                toLower();
+            }
+        }
+
+        /**
+         * Moves the path on past the nodes whose elements have expired in TTL mode, which reads treat as absent.
+         * 
+         * @param up - true to move on to larger elements, false to smaller ones
+         * @return true if the path had to move
+         */
+        private boolean skipExpired(boolean up)
+        {
+            boolean moved = false;
+            while (depth > 0 && expired(path[depth - 1]))
+            {
+                if (up) stepUp(); else stepDown();
+                moved = true;
+            }
+            return moved;
+        }
+
+        /**
+         * Moves up to the closest ancestor the current node is left of, which is the next element when the current
+         * node has no right subtree. The cursor is on no element if there is no such ancestor.
+         */
+        private void toUpper()
+        {
+            if (depth > 0) depth = highAt[depth - 1] + 1;
+        }
+
+        /**
+         * Moves up to the closest ancestor the current node is right of, which is the previous element when the
+         * current node has no left subtree. The cursor is on no element if there is no such ancestor.
+         */
+        private void toLower()
+        {
+            if (depth > 0) depth = lowAt[depth - 1] + 1;
+        }
+
+        /**
+         * Pushes a node and its chain of left children.
+         * 
+         * @param node - the top of the chain
+         */
+        private void pushLeft(Node<E> node)
+        {
+            for (; node != null; node = node.left)
+            {
+                push(node);
+            }
+        }
+
+        /**
+         * Pushes a node and its chain of right children.
+         * 
+         * @param node - the top of the chain
+         */
+        private void pushRight(Node<E> node)
+        {
+            for (; node != null; node = node.right)
+            {
+                push(node);
+            }
+        }
+
+        /**
+         * Adds a child of the node on top to the path, or the root to an empty path, with the bounds of its subtree.
+         * 
+         * @param node - the node
+         */
+        private void push(Node<E> node)
+        {
+            if (depth == path.length)
+            {
+                path = Arrays.copyOf(path, depth * 2);
+                lowAt = Arrays.copyOf(lowAt, depth * 2);
+                highAt = Arrays.copyOf(highAt, depth * 2);
+            }
+            int parent = depth - 1;
+            if (parent < 0)
+            {
+                lowAt[depth] = -1;
+                highAt[depth] = -1;
+            }
+            else if (node == path[parent].right)
+            {
+                lowAt[depth] = parent;
+                highAt[depth] = highAt[parent];
+            }
+            else
+            {
+                lowAt[depth] = lowAt[parent];
+                highAt[depth] = parent;
+            }
+            path[depth++] = node;
+        }
+
+        /**
+         * Takes the current element from the top of the path and clears the rest of the array.
+         * 
+         * @return true if the cursor is on an element
+         */
+        private boolean settle()
+        {
+            for (int i = depth; i < path.length && path[i] != null; i++)
+            {
+                path[i] = null; // so removed nodes are not kept alive by the cursor
+            }
+            at = (depth == 0) ? null : path[depth - 1].data;
+            return depth > 0;
+        }
+    }
+
+    /**
+	 * Finds the lowest/left-most element in the tree (Wrapper)
+	 * 
+     * @return E - lowest element in the tree 
+	 */
+    public E first()
+    {  
+        E first = first(root);
+        if (first == null) throw new NoSuchElementException("Empty tree");
+        return first;
+    }
+
+     /**
+	 * Recursively finds the left-most non-null node in the tree, passing over expired nodes in TTL mode
+     * 
+     * @param n - the current node 
+	 * @return the lowest element in the subtree or null if there is none
+	 */
+    private E first(Node<E> n)
+    {  
+        if (n == null) return null;
+
+        E first = first(n.left);
+        if (first != null) return first;
+        return expired(n) ? first(n.right) : n.data;
+    }
+
+    /**
+     * Returns the greatest element in this set less than or equal to the given element, or null if there is no such element.
+     * It calls a recursive helper function to traverse the tree. 
+     * 
+     * @return the greatest element in this set less than or equal to the given element
+     */
+    protected E floor(E data)
+    {
+        //if its null or empty return null
+        if (isEmpty()) return null;
+        if (data == null) return null;
+		if (lookup(data, false) != null) {
+			return data;
+		}
+        return floor(data, root);
+    }
+
+    /**
+     * Finds the the greatest element in this set less than or equal to the given element, or null if there is no such element
+     * by comparing the data to the root and recursing. 
+     * 
+     * @param data - the value that we are trying to find the greatest value less than or equal to
+     * @param node - the current node
+     * @return the value of the greatest element in this set less than or equal to the given element
+     */
+    private E floor(E data, Node<E> node)
+    {
+        if (node == null) return null;
+
+        if (data.compareTo(node.data) > 0) 
+        {
+            E fl = floor(data, node.right);
+            if (fl != null) return fl; // anything found on the right is at most data and above the node
+            if (!expired(node)) return node.data;
+            return floor(data, node.left); // the node has expired, the left subtree is all below data
+		}
+        else 
+        {
+			return floor(data, node.left);
+		}
+    }
+
+    /**
+     * Returns the element at the specified position in this tree (that uses 0 based indexing). The order of the indexed elements is the same as provided by this tree's iterator. 
+     *  
+     * @param i - index of element to be returned
+     * @return element of index
+     */
+    public E get(int i) // put index field in the node
+    {
+        return get(i, root);
+    }
+
+    /**
+     * Returns the element at the specified position in this tree. Uses the size of the subtree as a way of indexing the elements. 
+     * If the value to be found is greater than the size of the left subtree we know it is in the right subtree or is the root. 
+     * This makes the pivot depending on the left subtree size and traveres down in order to index every node. 
+     *  
+     * @param i - index of element to be returned
+     * @param node - the current node
+     * @return element of index
+     */
+    private E get (int i, Node<E> node)
+    {
+        if (node.left != null)
+        {
+            if (node.left.subtreeSize <= i) // its too big to be on the left
+            {
+                i -= node.left.subtreeSize; //subtract the left side of the tree from the index you're looking for
+            }
+            else
+            {
+                return get(i, node.left); // recurse
+            }
+        }
+        
+        if(i == 0) // if it is the current node 
+        {
+            return node.data;
+        }
+        else
+        {
+            i--;
+        }
+        return get(i, node.right);
+    }
+
+    /**
+     * Returns the number of elements in this tree that are less than the given element, which is the index the element
+     * has or would have in this tree. Adds up the sizes of the left subtrees passed on the way down. -- performance O(H)
+     * 
+     * @param data - the element to find the rank of
+     * @return the number of smaller elements
+     * @throws NullPointerException if data is null
+     */
+    public int rank(E data)
+    {
+        if (data == null) throw new NullPointerException("No null parameters");
+        int rank = 0;
+        long prefix = prefixOf(data);
+        Node<E> node = root;
+        while (node != null)
+        {
+            int comp = compare(data, prefix, node);
+            if (comp <= 0)
+            {
+                node = node.left;
+            }
+            else
+            {
+                rank += subtreeSize(node.left) + 1; // the left subtree and the node itself are smaller
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+    /**
+     * Returns a collection whose elements range from fromElement, inclusive, to toElement, inclusive recursively using a helper method.  
+     * This operation should be O(M) where M is the number of elements in the returned list.
+     * 
+     * @param start - the first element in the list
+     * @param end - the last element in the list
+     * @return an array list of the elements in the range from start to end
+     */
+    protected ArrayList<E> getRange(E start, E end)
+    {
+        if (start == null) throw new NullPointerException("No null parameters");
+        if (end == null) throw new NullPointerException("No null parameters");
+
+        if(start.compareTo(end) > 0) throw new IllegalArgumentException("The start element cannot be bigger than end element");
+        if (recorder != null) recorder.record(WorkloadRecorder.GET_RANGE, start, end);
+
+        ArrayList<E> arr = new ArrayList<E>(); 
+
+        findLast(root, arr, start, end);
+        
+        return arr;
+    }
+    
+    /**
+     * Finds all the elements from one starting value to a given value recusively so long as the comparison
+     * between the root and the start/end is less than/greater than 0(or equal) respectively, and adds them
+     * to an arraylist. 
+     * 
+     * @param node - the current node
+     * @param a - the arraylist to be filled with the nodes to be added
+     * @param start - the starting value
+     * @param end - the last value in the array
+     */
+    private void findLast(Node<E> node, ArrayList a, E start, E end) 
+    { 
+        if (node == null) { 
+			return; 
+        } 
+
+        int startComp = start.compareTo(node.data);
+        int endComp = end.compareTo(node.data);
+
+        if (startComp < 0) 
+        { 
+			findLast(node.left, a, start, end);
+        } 
+
+        if (startComp <= 0 && endComp >= 0 && !expired(node)) 
+        { 
+			a.add(node.data);
+        } 
+
+        if (endComp > 0)
+        {
+            findLast(node.right, a, start, end);
+        }
+    } 
+
+    /**
+     * Returns the k smallest elements in ascending order, walking a cursor from the smallest element. -- performance O(log N + k)
+     * 
+     * @param k - the number of elements
+     * @return a list of at most k elements
+     * @throws IllegalArgumentException if k is negative
+     */
+    public ArrayList<E> firstK(int k)
+    {
+        ArrayList<E> arr = resultList(k);
+        Cursor cursor = new Cursor();
+        for (E e = cursor.first(); e != null && arr.size() < k; e = cursor.next())
+        {
+            arr.add(e);
+        }
+        return arr;
+    }
+
+    /**
+     * Returns the k largest elements in descending order, walking a cursor from the largest element. -- performance O(log N + k)
+     * 
+     * @param k - the number of elements
+     * @return a list of at most k elements
+     * @throws IllegalArgumentException if k is negative
+     */
+    public ArrayList<E> lastK(int k)
+    {
+        ArrayList<E> arr = resultList(k);
+        Cursor cursor = new Cursor();
+        for (E e = cursor.last(); e != null && arr.size() < k; e = cursor.prev())
+        {
+            arr.add(e);
+        }
+        return arr;
+    }
+
+    /**
+     * Returns the k smallest elements greater than or equal to the given element in ascending order. -- performance O(log N + k)
+     * 
+     * @param data - the element to start from
+     * @param k - the number of elements
+     * @return a list of at most k elements
+     * @throws NullPointerException if data is null
+     * @throws IllegalArgumentException if k is negative
+     */
+    public ArrayList<E> ceilingK(E data, int k)
+    {
+        if (data == null) throw new NullPointerException("No null parameters");
+        ArrayList<E> arr = resultList(k);
+        Cursor cursor = new Cursor();
+        for (E e = cursor.seekCeiling(data); e != null && arr.size() < k; e = cursor.next())
+        {
+            arr.add(e);
+        }
+        return arr;
+    }
+
+    /**
+     * Returns the k elements closest to the given element, closest first. Two cursors start at the floor and the
+     * ceiling of the element and move outward, each step taking the closer of the two candidates, so only the
+     * returned elements and one more on each side are looked at. The distance must not get smaller when moving
+     * away from the element in either direction, as with the absolute difference of numbers. Equal distances are
+     * broken in favour of the smaller element. -- performance O(log N + k)
+     * 
+     * @param data - the element to measure the distances from
+     * @param k - the number of elements
+     * @param distance - gives the distance of an element of the tree from data
+     * @return a list of at most k elements
+     * @throws NullPointerException if data or distance is null
+     * @throws IllegalArgumentException if k is negative
+     */
+    public ArrayList<E> nearest(E data, int k, ToDoubleBiFunction<? super E, ? super E> distance)
+    {
+        if (data == null) throw new NullPointerException("No null parameters");
+        if (distance == null) throw new NullPointerException("No null distance function.");
+        ArrayList<E> arr = resultList(k);
+        if (k == 0) return arr;
+
+        Cursor up = new Cursor(); // moves to larger elements
+        Cursor down = new Cursor(); // moves to smaller elements
+        E high = up.seekCeiling(data);
+        E low = down.seekFloor(data);
+        if (low != null && high != null && low.compareTo(high) == 0)
+        {
+            low = down.prev(); // data is in the tree, the up cursor has it
+        }
+        double highDist = (high == null) ? 0 : distance.applyAsDouble(data, high);
+        double lowDist = (low == null) ? 0 : distance.applyAsDouble(data, low);
+
+        while (arr.size() < k && (low != null || high != null))
+        {
+            if (high == null || (low != null && lowDist <= highDist))
+            {
+                arr.add(low);
+                low = down.prev();
+                if (low != null) lowDist = distance.applyAsDouble(data, low);
+            }
+            else
+            {
+                arr.add(high);
+                high = up.next();
+                if (high != null) highDist = distance.applyAsDouble(data, high);
+            }
+        }
+        return arr;
+    }
+
+    /**
+     * Creates the list for a query of k elements, sized so it never grows.
+     * 
+     * @param k - the number of elements asked for
+     * @return an empty list with room for the result
+     * @throws IllegalArgumentException if k is negative
+     */
+    private ArrayList<E> resultList(int k)
+    {
+        if (k < 0) throw new IllegalArgumentException("The number of elements cannot be negative.");
+        return new ArrayList<E>(Math.min(k, size));
+    }
+
+    /** 
+     * Returns the height of this tree. The height of a leaf is 1. 
+     * The height of the tree is the height of its root node
+     * 
+     * @return the height of the tree or 0 if empty
+     */
+    public int height()
+    {
+        if (root == null) return 0;
+        return root.height; 
+    }
+
+    /** 
+     * Updates the height of all nodes in a subtree based on their children
+     * 
+     * @param root - the root node
+     * @param height - the height of the node
+     * @return the height of a node
+     */
+    private void updateHeight(Node<E> root)
+    {
+        if (root == null) return;
+        if(root.left == null && root.right == null)  // if there are no children the height is 1
+        {
+            root.height = 1;
+        }
+
+        // 1 child on right
+        else if(root.left == null) // for every time right isn't null incremement height by 1, recurse down
+        {
+            root.height = root.right.height + 1;
+        }
+        // 1 child on left
+        else if(root.right == null)  // for every time left isn't null incremement height by 1, recurse down
+        {
+            root.height = root.left.height + 1;
+        }
+        // 2 children - pick the max of the two 
+        else {
+            root.height = Math.max(root.left.height, root.right.height) + 1;
+        }
+    }
+
+    /**
+     * Creates a node for the data, with its aggregate if the tree has an augmentation
+     *
+     * @param data - the data stored in the node
+     * @return the new node
+     */
+    private Node<E> newNode(E data)
+    {
+        Node<E> node;
+        if (freeNodes != null)
+        {
+            node = freeNodes;
+            freeNodes = node.left;
+            pooled--;
+            node.data = data;
+            node.left = null;
+            node.height = 1;
+            node.subtreeSize = 1;
+            node.red = false;
+            node.priority = 0;
+            node.older = null;
+            node.newer = null;
+        }
+        else
+        {
+            node = new Node<E>(data);
+        }
+        if (augmentation != null)
+        {
+            node.summary = augmentation.lift(data);
+        }
+        node.prefix = prefixOf(data);
+        node.owner = owner;
+        if (eviction == Eviction.LRU || eviction == Eviction.TTL)
+        {
+            node.expires = System.nanoTime() + timeToLive;
+            append(node);
+        }
+        return node;
+    }
+
+    /**
+     * Hands a node that was unlinked from the tree to the pool, or drops it when the pool is full or turned off.
+     * The node is cleared so the pool does not keep its element alive.
+     *
+     * @param node - the unlinked node
+     */
+    private void freeNode(Node<E> node)
+    {
+        unlink(node);
+        if (pooled >= poolCapacity || node.owner != owner) return; // a snapshot may still hold the node
+        node.data = null;
+        node.summary = null;
+        node.right = null;
+        node.left = freeNodes;
+        freeNodes = node;
+        pooled++;
+    }
+
+    /**
+     * Returns a node this tree may change in place: the node itself if the tree owns it, otherwise a copy owned by
+     * the tree. Every update calls it on each node before changing it, so a change copies the nodes on its path and
+     * leaves the nodes a snapshot shares untouched.
+     *
+     * @param node - the node or null
+     * @return the node, its copy or null
+     */
+    private Node<E> own(Node<E> node)
+    {
+        if (node == null || node.owner == owner) return node;
+
+        Node<E> copy;
+        if (freeNodes != null)
+        {
+            copy = freeNodes;
+            freeNodes = copy.left;
+            pooled--;
+        }
+        else
+        {
+            copy = new Node<E>(node.data);
+        }
+        copy.data = node.data;
+        copy.left = node.left;
+        copy.right = node.right;
+        copy.height = node.height;
+        copy.subtreeSize = node.subtreeSize;
+        copy.summary = node.summary;
+        copy.red = node.red;
+        copy.priority = node.priority;
+        copy.prefix = node.prefix;
+        copy.owner = owner;
+        return copy;
+    }
+
+    /**
+     * Copies every node this tree shares with a snapshot, for the changes that touch every node.
+     */
+    private void unshare()
+    {
+        if (!shared) return;
+        root = clone(root);
+        shared = false;
+    }
+
+    /**
+     * Updates everything a node keeps about its subtree after one of its children or its data changed
+     *
+     * @param node - the node to update
+     */
+    private void updateNode(Node<E> node)
+    {
+        updateHeight(node);
+        updateSummary(node);
+    }
+
+    /**
+     * Recomputes the aggregate of a subtree from the aggregates of its children and the node's own data
+     *
+     * @param node - the root of the subtree
+     */
+    private void updateSummary(Node<E> node)
+    {
+        if (node == null || augmentation == null) return;
+
+        Object summary = augmentation.lift(node.data);
+        if (node.left != null)
+        {
+            summary = augmentation.combine(node.left.summary, summary);
+        }
+        if (node.right != null)
+        {
+            summary = augmentation.combine(summary, node.right.summary);
+        }
+        node.summary = summary;
+    }
+
+    /**
+     * Returns the aggregate of all of the elements in this tree.
+     *
+     * @return the aggregate of the tree, or the identity if the tree is empty
+     * @throws IllegalStateException if the tree was not constructed with an augmentation
+     */
+    @SuppressWarnings("unchecked")
+    public <A> A aggregate()
+    {
+        if (augmentation == null) throw new IllegalStateException("The tree does not have an augmentation.");
+        return (A) (root == null ? augmentation.identity() : root.summary);
+    }
+
+    /**
+     * Returns the aggregate of the elements from start, inclusive, to end, inclusive. It combines the aggregates
+     * kept in the subtrees that lie completely inside the range, so it is O(H) no matter how many elements are in the range.
+     *
+     * @param start - the first element of the range
+     * @param end - the last element of the range
+     * @return the aggregate of the range, or the identity if the range is empty
+     * @throws IllegalStateException if the tree was not constructed with an augmentation
+     */
+    @SuppressWarnings("unchecked")
+    public <A> A aggregate(E start, E end)
+    {
+        if (augmentation == null) throw new IllegalStateException("The tree does not have an augmentation.");
+        if (start == null) throw new NullPointerException("No null parameters");
+        if (end == null) throw new NullPointerException("No null parameters");
+        if (start.compareTo(end) > 0) throw new IllegalArgumentException("The start element cannot be bigger than end element");
+
+        return (A) aggregate(root, start, end);
+    }
+
+    /**
+     * Finds the aggregate of the elements of a subtree that lie between the bounds. A null bound means the subtree is
+     * known to be inside the range on that side. Once the search splits at a node inside the range each side only has
+     * one bound left, and at every node along that side either the whole child is inside the range and its kept
+     * aggregate is used, or it is outside and skipped, so only two paths are walked.
+     *
+     * @param node - the current node
+     * @param start - the lower bound or null
+     * @param end - the upper bound or null
+     * @return the aggregate of the part of the subtree inside the range
+     */
+    private Object aggregate(Node<E> node, E start, E end)
+    {
+        if (node == null) return augmentation.identity();
+        if (start == null && end == null) return node.summary;
+
+        if (start != null && start.compareTo(node.data) > 0)
+        {
+            return aggregate(node.right, start, end);
+        }
+        if (end != null && end.compareTo(node.data) < 0)
+        {
+            return aggregate(node.left, start, end);
+        }
+        Object left = aggregate(node.left, start, null);
+        Object right = aggregate(node.right, null, end);
+        return augmentation.combine(augmentation.combine(left, augmentation.lift(node.data)), right);
+    }
+
+    /**
+     * Returns the elements whose own value passes the test, in ascending order, up to the first element that is past
+     * the end. A subtree whose aggregate fails the test is skipped without visiting any of its nodes, and the walk
+     * stops at the first element past the end, so only the paths leading to matches are walked. The elements are found
+     * lazily as the iterator advances; the tree must not be changed while the iterator is in use.
+     *
+     * @param test - decides from an aggregate whether a subtree or a single element can match; it must hold for the
+     *               aggregate of a subtree whenever it holds for one of its elements
+     * @param past - true for the first element after the range and every element after it, null for no end
+     * @return an iterator over the matching elements
+     * @throws IllegalStateException if the tree was not constructed with an augmentation
+     */
+    public <A> Iterator<E> search(Predicate<? super A> test, Predicate<? super E> past)
+    {
+        if (augmentation == null) throw new IllegalStateException("The tree does not have an augmentation.");
+        if (test == null) throw new NullPointerException("No null parameters");
+        return new SearchIter<A>(test, past);
+    }
+
+    /**
+     * This private class is an in-order iterator that only goes into the subtrees whose aggregate passes the test.
+     * The stack holds the nodes whose data and right subtree are still to be looked at.
+     */
+    private class SearchIter<A> implements Iterator<E>
+    {
+        private final Predicate<? super A> test; // decides whether a subtree or element can match
+        private final Predicate<? super E> past; // true for the elements after the range, null for no end
+        private final ArrayList<Node<E>> stack = new ArrayList<Node<E>>(); // the path to the next candidate
+        private E next; // the next matching element or null when there are no more
+
+        /**
+         * Constructor that instantiates an iterator for the test and finds the first match.
+         *
+         * @param test - decides whether a subtree or element can match
+         * @param past - true for the elements after the range or null
+         */
+        SearchIter(Predicate<? super A> test, Predicate<? super E> past)
+        {
+            this.test = test;
+            this.past = past;
+            pushLeft(root);
+            advance();
+        }
+
+        /**
+         * Pushes a node and its chain of left children, stopping at the first subtree whose aggregate fails the test.
+         *
+         * @param node - the top of the chain
+         */
+        @SuppressWarnings("unchecked")
+        private void pushLeft(Node<E> node)
+        {
+            while (node != null && test.test((A) node.summary))
+            {
+                stack.add(node);
+                node = node.left;
+            }
+        }
+
+        /**
+         * Moves to the next matching element.
+         */
+        @SuppressWarnings("unchecked")
+        private void advance()
+        {
+            next = null;
+            while (!stack.isEmpty())
+            {
+                Node<E> node = stack.remove(stack.size() - 1);
+                if (past != null && past.test(node.data))
+                {
+                    stack.clear(); // every element from here on is after the range
+                    return;
+                }
+                pushLeft(node.right);
+                if (!expired(node) && test.test((A) augmentation.lift(node.data)))
+                {
+                    next = node.data;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * This method returns whether there is another matching element
+         *
+         * @return boolean true/false if there is another element
+         */
+        public boolean hasNext()
+        {
+            return next != null;
+        }
+
+        /**
+         * This method returns the next matching element
+         *
+         * @throws NoSuchElementException if there is not another element
+         * @return the next element
+         */
+        public E next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException("Next node does not exist.");
+            }
+            E result = next;
+            advance();
+            return result;
+        }
+    }
+
+    /**
+     * Finds the least element strictly greater than the given data or null if it DNE recursively by calling it's helper method
+     * 
+     * @param data - the value to find the higher value of
+     * @return least element strictly greater than the given data or null
+     */
+    protected E higher(E data)
+    {
+        if (data == null) throw new NullPointerException("No null params.");
+        E dataCast = (E)data;
+
+        return higher(dataCast, root);
+    }
+
+    /**
+     * Finds the east element strictly greater than the given data starting at the root
+     * 
+     * @param data - the data we want to find the higher value of
+     * @param curr - the current node
+     * @return the value higher than the given parameter or null
+     */
+    private E higher(E data, Node<E> curr)
+    {
+        if (curr == null) return null;
+        //if the root is less than or equal to the data, go right
+        if (curr.data.compareTo(data) <= 0) 
+        {
+            return higher(data, curr.right);
+        }
+        else 
+        {
+            E d = higher(data, curr.left);
+            if (d == null)
+            {
+                return expired(curr) ? higher(data, curr.right) : curr.data;
+            }
+            return d; // going left
+        }
+    }
+
+    /**
+     * This method returns true if this collection contains no elements.
+     * 
+     * @return boolean true or false if the collection does not have any elements
+     */
+    protected boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Finds the data of the largest node in the tree recursively by calling its helper function
+     * 
+     * @return the data of the largest node
+     */
+    protected E last()
+    {
+        if (isEmpty())
+			return null;
 		
 		return last(root);
     }
     /**
-     * Finds the last node in the tree at the right most point recursively and stops when the right most path becomes null
+     * Finds the last node in the tree at the right most point recursively and stops when the right most path becomes null,
+     * passing over expired nodes in TTL mode
+     * 
+     * @param - the current node
+     * @return the right most element or null if there is none
+     */
+    private E last(Node<E> n) {
+		if (n == null) 
+			return null;
+
+        E last = last(n.right);
+        if (last != null) return last;
+        return expired(n) ? last(n.left) : n.data;
+    }
+    /**
+     * Takes in the parameter to find the lower value of by calling the lower value
+     * that takes in the current node and the given parameter
+     * 
+     * @param data - the value to find the lower value of
+     * @return the lower value data
+     */
+    protected E lower(E data)
+    {
+        if (data == null) throw new NullPointerException("No null params");
+        E dataCast = (E)data;
+
+        return lower(dataCast, root);
+    }
+
+    /**
+     * Recursively gets the node that is greatest node in the tree is that is strictly lower than the given value 
+     * or null if it's not present. 
+     * 
+     * @param data - the data we're trying to get the lower value of 
+     * @param curr - the current node
+     * @return - the data of the node lower than the given value
+     */
+    private E lower(E data, Node<E> curr)
+    {
+        if (curr == null) return null;
+        //if the root is bigger than or equal to the data, go left
+        if (curr.data.compareTo(data) >= 0) 
+        {
+			return lower(data, curr.left);
+		}
+        else // its smaller so go right
+        {
+            E d = lower(data, curr.right);
+            if (d == null)
+            {
+                return expired(curr) ? lower(data, curr.left) : curr.data;
+            }
+            return d; // if we found the lower element 
+        }
+    }
+
+    /**
+     * This method returns an iterator over the elements in ascending order.
+     * Key determines the type of traversal.
+     * 
+     * @return an iterator
+     */
+
+    public Iterator<E> iterator()
+    {
+        String s = "";
+        return new Iter(s);
+    }
+
+    /**
+     * Returns an iterator over the elements in this tree in order of the preorder traversal.
+     * Key determines the type of traversal.
+     * 
+     * @return iterator over elements in the tree in preorder traversal
+     */
+    protected Iterator<E> preorderIterator()
+    {
+        String s = "preorder";
+        return new Iter(s);
+    }
+
+    /**
+     * Returns an iterator over the elements in this tree in order of the postorder traversal.
+     * Key determines the type of traversal.
+     * 
+     * @return iterator over elements in the tree in postorder traversal
+     */
+    protected Iterator<E> postorderIterator()
+    {
+        String s = "postorder";
+        return new Iter(s);
+    }
+
+    /**
+     * Returns an iterator over the elements in this tree in order of the inorder traversal.
+     * Key determines the type of traversal.
      * 
-     * @param - the current node
-     * @return the right most node
+     * @return iterator over elements in the tree in inorder traversal
      */
-    private E last(Node<E> n) {
-		if (n.right == null) 
-			return n.data;
-		else
-			return last(n.right);
+    protected Iterator<E> inorderorderIterator()
+    {
+        String s = "inorder";
+        return new Iter(s);
+    }
+/**
+ * Removes the specified element from this tree if it is present. More formally, removes
+ * an element e such that Objects.equals(o, e), if this tree contains such an element. Returns 
+ * true if this tree contained the element (or equivalently, if this tree changed as a result of the call).
+ * 
+ * @param o - object to be removed from set if present
+ * @return true if set contained the specified element
+ * @throws ClassCastException - if the specified object cannot be compared with the elements currently in this tree
+ * @throws NullPointerException - if the specified element is null
+ */
+    protected boolean remove(Object o)
+    {
+        if (o == null) throw new NullPointerException("No null objects.");
+        if (recorder != null) record(WorkloadRecorder.REMOVE, o);
+        if (eviction == Eviction.TTL) evictExpired();
+        return delete(o);
+    }
+
+    /**
+     * Does the work of remove without recording the call, for the methods of the tree that remove an element.
+     * 
+     * @param o - object to be removed from set if present
+     * @return true if set contained the specified element
+     */
+    private boolean delete(Object o)
+    {
+        @SuppressWarnings("unchecked")
+        E data = (E) o;
+        E removed = (balancing == Balancing.NONE) ? removeUnbalanced(data) : removeBalanced(data);
+        if (removed != null)
+        {
+            modCount++;
+            if (filter != null) filter.remove(removed);
+            publish(ChangeFeed.Type.REMOVED, removed); // the element the tree held, not the equal one asked for
+        }
+        return removed != null;
+    }
+
+    /**
+     * Removes the element without rebalancing.
+     * 
+     * @param data - the element to be removed
+     * @return the element the tree held, or null if the tree did not contain it
+     */
+    private E removeUnbalanced(E data)
+    {
+        if (size == 1)
+        {
+            if (data.compareTo(root.data) != 0) return null;
+            E removed = root.data;
+            freeNode(root);
+            root = null; 
+            size--;
+            return removed;
+        }
+        if (size == 0)
+        {
+            return null;
+        }
+       
+        Node<E> target = find(data);
+        if (target == null) return null;
+        
+        E removed = target.data;
+        root = remove(data, root); // the root is replaced when it is the node being removed
+        return removed;
+    }
+
+    /**
+     * Finds the location of the node to be removed. Traverses left or right of the tree depending on 
+     * it's value in comparison to the root's data. Calls the removeNode function to remove the node. 
+     * -- updates the size, index, and height of the tree 
+     * @param data - the data to be removed
+     * @param node - the current node
+     * @return the node to be removed
+     */
+    private Node<E> remove(E data, Node<E> node)
+    {
+        if (node == null) return null;
+
+        node = own(node); // the element is known to be in the tree, so every node on its path changes
+        if(data.compareTo(node.data) < 0)
+        {
+            int s = size;
+            node.left = remove(data, node.left);
+            if (s > size)
+            {
+                node.subtreeSize--;
+            }
+        }
+        else if (data.compareTo(node.data) > 0)
+        {
+            int s = size;
+            node.right = remove(data, node.right);
+            if (s > size)
+            {
+                node.subtreeSize--;
+            }
+        }
+        else 
+        {
+            node.subtreeSize--;
+            Node<E> replacement = removeNode(node);
+            if (replacement != node) return replacement; // a child took its place unchanged
+        }
+        updateNode(node);
+        return node;
+    }
+/**
+ * Finds the node to be removed and checks the children to see where it's safe to remove the node.
+ * Returns the node of the non null child to take its place or the predecessor
+ * -- updates the size but not height because the node is being removed
+ * 
+ * @param node - the node to be removed
+ * @return the child of the node to replace the root or predecessor
+ */
+    private Node<E> removeNode(Node<E> node)
+    {
+        //only right child
+        if(node.left == null)
+        {
+            size--; 
+            Node<E> child = node.right;
+            freeNode(node);
+            return child;
+        }
+        //only left child
+        else if (node.right == null)
+        {
+            size--; 
+            Node<E> child = node.left;
+            freeNode(node);
+            return child;
+        }
+
+        else{
+            // two children 
+            Node<E> predecessor = getPredecessor(node.left);
+            E copy = predecessor.data;
+            copyData(predecessor, node);
+            node.left = remove(copy, node.left);
+            return node;
+        }
+    }
+
+
+    /**
+     * Adds the element using the balancing mode of the tree.
+     *
+     * @param data - the element to be added
+     * @return boolean whether or not the element was added
+     */
+    private boolean addBalanced(E data)
+    {
+        int s = size;
+        switch (balancing)
+        {
+            case RED_BLACK:
+                root = addRedBlack(root, data, prefixOf(data));
+                root.red = false;
+                break;
+            case TREAP:
+                root = addTreap(root, data, prefixOf(data));
+                break;
+            case SCAPEGOAT:
+                addScapegoat(data);
+                break;
+            default:
+                addSplay(data);
+                break;
+        }
+        return size > s;
+    }
+
+    /**
+     * Removes the element using the balancing mode of the tree.
+     *
+     * @param data - the element to be removed
+     * @return the element the tree held, or null if the tree did not contain it
+     */
+    private E removeBalanced(E data)
+    {
+        if (root == null) return null;
+        if (balancing == Balancing.SPLAY) return removeSplay(data); // the search splays, so it is not done twice
+
+        Node<E> target = find(data); // holds the stored element, and the top-down red-black delete needs it present
+        if (target == null) return null;
+        E removed = target.data;
+        switch (balancing)
+        {
+            case RED_BLACK:
+                root = own(root);
+                if (!isRed(root.left) && !isRed(root.right)) root.red = true;
+                root = removeRedBlack(root, data);
+                if (root != null) root.red = false;
+                break;
+            case TREAP:
+                root = removeTreap(root, data);
+                break;
+            case SCAPEGOAT:
+                // a node with two children takes its predecessor's element and the predecessor's node is unlinked
+                E unlinked = (target.left != null && target.right != null) ? getPredecessor(target.left).data : data;
+                root = remove(data, root);
+                root = rebalancePath(root, unlinked, prefixOf(unlinked));
+                break;
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of nodes in a subtree
+     *
+     * @param node - the root of the subtree or null
+     * @return the size of the subtree
+     */
+    private int subtreeSize(Node<E> node)
+    {
+        return node == null ? 0 : node.subtreeSize;
+    }
+
+    /**
+     * Returns the key prefix of an element.
+     *
+     * @param data - the element
+     * @return the prefix, or 0 if the tree has no KeyPrefix
+     */
+    private long prefixOf(E data)
+    {
+        return keyPrefix == null ? 0 : keyPrefix.prefix(data);
+    }
+
+    /**
+     * Compares an element to the element of a node, by their prefixes first when the tree has a KeyPrefix
+     * so compareTo is only called when the prefixes are the same.
+     *
+     * @param data - the element
+     * @param prefix - the prefix of the element
+     * @param node - the node
+     * @return a negative number, 0 or a positive number as the element is less than, equal to or greater than the node's
+     */
+    private int compare(E data, long prefix, Node<E> node)
+    {
+        if (keyPrefix != null && prefix != node.prefix)
+        {
+            return Long.compareUnsigned(prefix, node.prefix);
+        }
+        return data.compareTo(node.data);
+    }
+
+    /**
+     * Moves the element of one node into another node whose element is being removed, together with what the tree
+     * keeps about the element: its prefix and its place in the eviction order.
+     *
+     * @param from - the node whose element moves, it is unlinked from the tree afterwards
+     * @param to - the node that takes the element
+     */
+    private void copyData(Node<E> from, Node<E> to)
+    {
+        to.data = from.data;
+        to.prefix = from.prefix;
+        if (oldest == null) return;
+
+        unlink(to); // the element of to leaves the tree
+        if (from.older == null && oldest != from) return;
+        to.expires = from.expires;
+        to.older = from.older;
+        to.newer = from.newer;
+        if (to.older != null) to.older.newer = to; else oldest = to;
+        if (to.newer != null) to.newer.older = to; else newest = to;
+        from.older = null;
+        from.newer = null;
+    }
+
+    /**
+     * Recomputes the subtree size, height and aggregate of a node whose children were changed by a rotation
+     *
+     * @param node - the node to refresh
+     */
+    private void refresh(Node<E> node)
+    {
+        node.subtreeSize = 1 + subtreeSize(node.left) + subtreeSize(node.right);
+        updateNode(node);
+    }
+
+    /**
+     * Rotates the right child of a node up into its place.
+     *
+     * @param node - the node to rotate down
+     * @return the new root of the subtree
+     */
+    private Node<E> rotateLeft(Node<E> node)
+    {
+        node = own(node);
+        Node<E> child = own(node.right);
+        node.right = child.left;
+        child.left = node;
+        refresh(node);
+        refresh(child);
+        return child;
+    }
+
+    /**
+     * Rotates the left child of a node up into its place.
+     *
+     * @param node - the node to rotate down
+     * @return the new root of the subtree
+     */
+    private Node<E> rotateRight(Node<E> node)
+    {
+        node = own(node);
+        Node<E> child = own(node.left);
+        node.left = child.right;
+        child.right = node;
+        refresh(node);
+        refresh(child);
+        return child;
+    }
+
+    /**
+     * Returns whether the link to a node is red. Null links are black.
+     *
+     * @param node - the node or null
+     * @return true if the node is red
+     */
+    private boolean isRed(Node<E> node)
+    {
+        return node != null && node.red;
+    }
+
+    /**
+     * Rotates a red right link to lean left, the rotated node takes over the colour of the link above it.
+     *
+     * @param node - the node with the red right link
+     * @return the new root of the subtree
+     */
+    private Node<E> rotateLeftRed(Node<E> node)
+    {
+        node = own(node);
+        Node<E> child = rotateLeft(node);
+        child.red = node.red;
+        node.red = true;
+        return child;
+    }
+
+    /**
+     * Rotates a red left link to lean right, the rotated node takes over the colour of the link above it.
+     *
+     * @param node - the node with the red left link
+     * @return the new root of the subtree
+     */
+    private Node<E> rotateRightRed(Node<E> node)
+    {
+        node = own(node);
+        Node<E> child = rotateRight(node);
+        child.red = node.red;
+        node.red = true;
+        return child;
+    }
+
+    /**
+     * Flips the colour of a node and both of its children, which splits or joins a 4-node.
+     *
+     * @param node - the node whose colours are flipped, owned by this tree
+     */
+    private void flipColors(Node<E> node)
+    {
+        node.left = own(node.left);
+        node.right = own(node.right);
+        node.red = !node.red;
+        node.left.red = !node.left.red;
+        node.right.red = !node.right.red;
+    }
+
+    /**
+     * Restores the left-leaning red-black shape of a node on the way back up and refreshes it.
+     *
+     * @param node - the node to fix
+     * @return the root of the fixed subtree
+     */
+    private Node<E> fixUp(Node<E> node)
+    {
+        if (isRed(node.right) && !isRed(node.left)) node = rotateLeftRed(node);
+        if (isRed(node.left) && isRed(node.left.left)) node = rotateRightRed(node);
+        if (isRed(node.left) && isRed(node.right)) flipColors(node);
+        refresh(node);
+        return node;
+    }
+
+    /**
+     * Recursively adds the element as a red leaf and restores the red-black shape on the way back up.
+     *
+     * @param node - the current node
+     * @param data - the element to be added
+     * @return the root of the subtree after the element was added
+     */
+    private Node<E> addRedBlack(Node<E> node, E data, long prefix)
+    {
+        if (node == null)
+        {
+            size++;
+            Node<E> addElement = newNode(data);
+            addElement.red = true;
+            return addElement;
+        }
+
+        int comp = compare(data, prefix, node);
+        if (comp == 0) return node;
+
+        int s = size;
+        Node<E> child = addRedBlack(comp < 0 ? node.left : node.right, data, prefix);
+        if (size == s) return node; // the element was already there and nothing below changed
+        node = own(node);
+        if (comp < 0)
+        {
+            node.left = child;
+        }
+        else
+        {
+            node.right = child;
+        }
+        return fixUp(node);
+    }
+
+    /**
+     * Recursively removes an element that is known to be present, pushing a red link down the search path
+     * so the node that is unlinked is never a lone black node.
+     *
+     * @param node - the current node
+     * @param data - the element to be removed
+     * @return the root of the subtree after the element was removed
+     */
+    private Node<E> removeRedBlack(Node<E> node, E data)
+    {
+        node = own(node);
+        if (data.compareTo(node.data) < 0)
+        {
+            if (!isRed(node.left) && !isRed(node.left.left)) node = moveRedLeft(node);
+            node.left = removeRedBlack(node.left, data);
+        }
+        else
+        {
+            if (isRed(node.left)) node = rotateRightRed(node);
+            if (data.compareTo(node.data) == 0 && node.right == null)
+            {
+                size--;
+                freeNode(node);
+                return null;
+            }
+            if (!isRed(node.right) && !isRed(node.right.left)) node = moveRedRight(node);
+            if (data.compareTo(node.data) == 0)
+            {
+                // the successor takes the place of the removed element
+                Node<E> successor = node.right;
+                while (successor.left != null)
+                {
+                    successor = successor.left;
+                }
+                copyData(successor, node);
+                node.right = removeMinRedBlack(node.right);
+            }
+            else
+            {
+                node.right = removeRedBlack(node.right, data);
+            }
+        }
+        return fixUp(node);
+    }
+
+    /**
+     * Recursively removes the smallest node of a red-black subtree.
+     *
+     * @param node - the root of the subtree
+     * @return the root of the subtree without its smallest node
+     */
+    private Node<E> removeMinRedBlack(Node<E> node)
+    {
+        if (node.left == null)
+        {
+            size--;
+            freeNode(node);
+            return null;
+        }
+        node = own(node);
+        if (!isRed(node.left) && !isRed(node.left.left)) node = moveRedLeft(node);
+        node.left = removeMinRedBlack(node.left);
+        return fixUp(node);
+    }
+
+    /**
+     * Makes the left child or one of its children red so the search can go left.
+     *
+     * @param node - the current node
+     * @return the root of the subtree
+     */
+    private Node<E> moveRedLeft(Node<E> node)
+    {
+        flipColors(node);
+        if (isRed(node.right.left))
+        {
+            node.right = rotateRightRed(node.right);
+            node = rotateLeftRed(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
+    /**
+     * Makes the right child or one of its children red so the search can go right.
+     *
+     * @param node - the current node
+     * @return the root of the subtree
+     */
+    private Node<E> moveRedRight(Node<E> node)
+    {
+        flipColors(node);
+        if (isRed(node.left.left))
+        {
+            node = rotateRightRed(node);
+            flipColors(node);
+        }
+        return node;
     }
+
     /**
-     * Takes in the parameter to find the lower value of by calling the lower value
-     * that takes in the current node and the given parameter
-     * 
-     * @param data - the value to find the lower value of
-     * @return the lower value data
+     * Recursively adds the element as a leaf with a random priority and rotates it up while its priority
+     * is higher than its parent's.
+     *
+     * @param node - the current node
+     * @param data - the element to be added
+     * @return the root of the subtree after the element was added
      */
-    protected E lower(E data)
+    private Node<E> addTreap(Node<E> node, E data, long prefix)
     {
-        if (data == null) throw new NullPointerException("No null params");
-        E dataCast = (E)data;
+        if (node == null)
+        {
+            size++;
+            Node<E> addElement = newNode(data);
+            addElement.priority = priorities.nextInt();
+            return addElement;
+        }
 
-		if (first().compareTo(dataCast) > 0) {
-			return null;
+        int comp = compare(data, prefix, node);
+        if (comp == 0) return node;
+
+        int s = size;
+        Node<E> child = addTreap(comp < 0 ? node.left : node.right, data, prefix);
+        if (size == s) return node; // the element was already there and nothing below changed
+        node = own(node);
+        if (comp < 0)
+        {
+            node.left = child;
+            if (node.left.priority > node.priority) return rotateRight(node);
         }
-        
-        return lower(dataCast, root);
+        else
+        {
+            node.right = child;
+            if (node.right.priority > node.priority) return rotateLeft(node);
+        }
+        refresh(node);
+        return node;
     }
 
     /**
-     * Recursively gets the node that is greatest node in the tree is that is strictly lower than the given value 
-     * or null if it's not present. 
-     * 
-     * @param data - the data we're trying to get the lower value of 
-     * @param curr - the current node
-     * @return - the data of the node lower than the given value
+     * Recursively finds the element and replaces its node with the merge of its two subtrees.
+     *
+     * @param node - the current node
+     * @param data - the element to be removed
+     * @return the root of the subtree after the element was removed
      */
-    private E lower(E data, Node<E> curr)
+    private Node<E> removeTreap(Node<E> node, E data)
     {
-        if (curr == null) return null;
-        //if the root is bigger than or equal to the data, go left
-        if (curr.data.compareTo(data) >= 0) 
+        if (node == null) return null;
+
+        int comp = data.compareTo(node.data);
+        if (comp == 0)
         {
-			return lower(data, curr.left);
-		}
-        else // its smaller so go right
+            size--;
+            Node<E> merged = merge(node.left, node.right);
+            freeNode(node);
+            return merged;
+        }
+
+        int s = size;
+        Node<E> child = removeTreap(comp < 0 ? node.left : node.right, data);
+        if (size == s) return node; // the element was not there and nothing below changed
+        node = own(node);
+        if (comp < 0)
         {
-            E d = lower(data, curr.right);
-            if (d == null)
-            {
-                return curr.data;
-            }
-            return d; // if we found the lower element 
+            node.left = child;
+        }
+        else
+        {
+            node.right = child;
         }
+        refresh(node);
+        return node;
     }
 
     /**
-     * This method returns an iterator over the elements in ascending order.
-     * Key determines the type of traversal.
-     * 
-     * @return an iterator
+     * Merges two treaps where every element of the first is smaller than every element of the second.
+     * The root with the higher priority stays on top and the other treap is merged into its inner side.
+     *
+     * @param low - the treap with the smaller elements
+     * @param high - the treap with the larger elements
+     * @return the root of the merged treap
      */
-
-    public Iterator<E> iterator()
+    private Node<E> merge(Node<E> low, Node<E> high)
     {
-        String s = "";
-        return new Iter(s);
+        if (low == null) return high;
+        if (high == null) return low;
+
+        if (low.priority > high.priority)
+        {
+            low = own(low);
+            low.right = merge(low.right, high);
+            refresh(low);
+            return low;
+        }
+        high = own(high);
+        high.left = merge(low, high.left);
+        refresh(high);
+        return high;
     }
 
     /**
-     * Returns an iterator over the elements in this tree in order of the preorder traversal.
-     * Key determines the type of traversal.
-     * 
-     * @return iterator over elements in the tree in preorder traversal
+     * Searches for the element and splays the last node on the search path to the root.
+     *
+     * @param data - the element to search for
+     * @return the comparison of the element with the new root, 0 if it was found
      */
-    protected Iterator<E> preorderIterator()
+    private int splay(E data)
     {
-        String s = "preorder";
-        return new Iter(s);
+        splayPath.clear();
+        Node<E> node = root;
+        long prefix = prefixOf(data);
+        int comp = 0;
+        while (node != null)
+        {
+            splayPath.add(node);
+            comp = compare(data, prefix, node);
+            if (comp == 0) break;
+            node = comp < 0 ? node.left : node.right;
+        }
+        splayToRoot();
+        return comp;
     }
 
     /**
-     * Returns an iterator over the elements in this tree in order of the postorder traversal.
-     * Key determines the type of traversal.
-     * 
-     * @return iterator over elements in the tree in postorder traversal
+     * Splays the last node of splayPath to the root with zig, zig-zig and zig-zag steps. The path is
+     * walked bottom-up from the list instead of recursing, so a long path cannot overflow the stack.
      */
-    protected Iterator<E> postorderIterator()
+    private void splayToRoot()
     {
-        String s = "postorder";
-        return new Iter(s);
+        int i = splayPath.size() - 1;
+        if (i < 0) return;
+
+        Node<E> node = splayPath.get(i);
+        if (i > 0) splayCount++;
+        while (i > 0)
+        {
+            Node<E> parent = splayPath.get(i - 1);
+            Node<E> grand = i >= 2 ? splayPath.get(i - 2) : null;
+            if (grand == null)
+            {
+                rotateUp(node, parent, null); // zig
+                i--;
+                continue;
+            }
+            Node<E> great = i >= 3 ? splayPath.get(i - 3) : null;
+            if ((grand.left == parent) == (parent.left == node))
+            {
+                rotateUp(parent, grand, great); // zig-zig
+                rotateUp(node, parent, great);
+            }
+            else
+            {
+                rotateUp(node, parent, grand); // zig-zag
+                rotateUp(node, grand, great);
+            }
+            i -= 2;
+        }
+        splayPath.clear();
     }
 
     /**
-     * Returns an iterator over the elements in this tree in order of the inorder traversal.
-     * Key determines the type of traversal.
-     * 
-     * @return iterator over elements in the tree in inorder traversal
+     * Rotates a node above its parent and links it to what was its grandparent.
+     *
+     * @param node - the node moving up
+     * @param parent - the parent of the node
+     * @param grand - the parent of parent or null if parent is the root
      */
-    protected Iterator<E> inorderorderIterator()
-    {
-        String s = "inorder";
-        return new Iter(s);
-    }
-/**
- * Removes the specified element from this tree if it is present. More formally, removes
- * an element e such that Objects.equals(o, e), if this tree contains such an element. Returns 
- * true if this tree contained the element (or equivalently, if this tree changed as a result of the call).
- * 
- * @param o - object to be removed from set if present
- * @return true if set contained the specified element
- * @throws ClassCastException - if the specified object cannot be compared with the elements currently in this tree
- * @throws NullPointerException - if the specified element is null
- */
-    protected boolean remove(Object o)
+    private void rotateUp(Node<E> node, Node<E> parent, Node<E> grand)
     {
-        if (o == null) throw new NullPointerException("No null objects.");
+        if (parent.left == node)
+        {
+            parent.left = node.right;
+            node.right = parent;
+        }
+        else
+        {
+            parent.right = node.left;
+            node.left = parent;
+        }
 
-        if (size == 1)
+        if (grand == null)
         {
-            root = null; 
-            size--;
-            return true;
+            root = node;
         }
-        if (size == 0)
+        else if (grand.left == parent)
         {
-            return false;
+            grand.left = node;
         }
-       
-        E data = (E)o;
-        if (!contains(data)) return false;
-        
-        remove(data, root);
-        return true;
+        else
+        {
+            grand.right = node;
+        }
+        refresh(parent);
+        refresh(node);
     }
 
     /**
-     * Finds the location of the node to be removed. Traverses left or right of the tree depending on 
-     * it's value in comparison to the root's data. Calls the removeNode function to remove the node. 
-     * -- updates the size, index, and height of the tree 
-     * @param data - the data to be removed
-     * @param node - the current node
-     * @return the node to be removed
+     * Splays the element's neighbour to the root and adds the element above it as the new root.
+     *
+     * @param data - the element to be added
      */
-    private Node<E> remove(E data, Node<E> node)
+    private void addSplay(E data)
     {
-        if (node == null) return null;
+        int comp = root == null ? 0 : splay(data);
+        if (root != null && comp == 0) return;
 
-        else if(data.compareTo(node.data) < 0)
+        Node<E> addElement = newNode(data);
+        if (root != null)
         {
-            int s = size;
-            node.left = remove(data, node.left);
-            if (s > size)
+
+            if (comp < 0)
             {
-                node.subtreeSize--;
+                addElement.left = root.left;
+                addElement.right = root;
+                root.left = null;
+            }
+            else
+            {
+                addElement.right = root.right;
+                addElement.left = root;
+                root.right = null;
             }
+            refresh(root);
         }
-        else if (data.compareTo(node.data) > 0)
+        root = addElement;
+        refresh(root);
+        size++;
+    }
+
+    /**
+     * Splays the element to the root and replaces it with its left subtree, after splaying the largest
+     * element of that subtree to its top so the right subtree can hang from it.
+     *
+     * @param data - the element to be removed
+     * @return the element the tree held, or null if the tree did not contain it
+     */
+    private E removeSplay(E data)
+    {
+        if (splay(data) != 0) return null;
+
+        Node<E> removed = root;
+        E element = removed.data;
+        Node<E> right = root.right;
+        if (root.left == null)
         {
-            int s = size;
-            node.right = remove(data, node.right);
-            if (s > size)
+            root = right;
+        }
+        else
+        {
+            root = root.left;
+            Node<E> node = root;
+            while (node != null)
             {
-                node.subtreeSize--;
+                splayPath.add(node);
+                node = node.right;
             }
+            splayToRoot();
+            root.right = right;
+            refresh(root);
         }
-        else 
+        freeNode(removed);
+        size--;
+        return element;
+    }
+
+    /**
+     * Adds the element as a leaf the same way as an unbalanced tree and then rebuilds the highest
+     * unbalanced subtree on its path, if there is one.
+     *
+     * @param data - the element to be added
+     */
+    private void addScapegoat(E data)
+    {
+        if (find(data) != null) return;
+        if (root == null)
         {
-            node.subtreeSize--;
-            node = removeNode(node);
+            root = newNode(data);
+            size++;
+            return;
         }
-        updateHeight(node);
-        return node;
+        long prefix = prefixOf(data);
+        root = add(root, data, prefix);
+        root = rebalancePath(root, data, prefix);
     }
-/**
- * Finds the node to be removed and checks the children to see where it's safe to remove the node.
- * Returns the node of the non null child to take its place or the predecessor
- * -- updates the size but not height because the node is being removed
- * 
- * @param node - the node to be removed
- * @return the child of the node to replace the root or predecessor
- */
-    private Node<E> removeNode(Node<E> node)
+
+    /**
+     * Returns whether one child of a node holds more than ALPHA of the node's subtree.
+     *
+     * @param node - the node to check
+     * @return true if the node is unbalanced
+     */
+    private boolean isUnbalanced(Node<E> node)
     {
-        //only right child
-        if(node.left == null)
+        int limit = (int) (ALPHA * node.subtreeSize);
+        return subtreeSize(node.left) > limit || subtreeSize(node.right) > limit;
+    }
+
+    /**
+     * Walks the search path of the element from the top and rebuilds the first unbalanced subtree it finds.
+     * Only the path down to the node the last add linked or the last remove unlinked can have become unbalanced.
+     * A node holding the element is passed on the left, since a removed predecessor was unlinked below it there.
+     *
+     * @param node - the current node
+     * @param data - the element that was added, or the element of the node that was unlinked
+     * @return the root of the subtree after rebuilding
+     */
+    private Node<E> rebalancePath(Node<E> node, E data, long prefix)
+    {
+        if (node == null) return null;
+        if (isUnbalanced(node)) return rebuild(node);
+
+        node = own(node);
+        if (compare(data, prefix, node) <= 0)
         {
-            size--; 
-            return node.right;
+            node.left = rebalancePath(node.left, data, prefix);
         }
-        //only left child
-        else if (node.right == null)
+        else
         {
-            size--; 
-            return node.left;
+            node.right = rebalancePath(node.right, data, prefix);
         }
+        updateNode(node); // a rebuilt subtree below may be lower than before
+        return node;
+    }
 
-        else{
-            // two children 
-            E copy = getPredecessor(node.left);
-            node.data = copy;
-            node.left = remove(copy, node.left);
-            return node;
-        }
+    /**
+     * Rebuilds a subtree into a perfectly balanced one. The nodes are first flattened into a list linked through
+     * their right children and then relinked middle first, so no node or array is allocated.
+     *
+     * @param node - the root of the subtree
+     * @return the root of the rebuilt subtree
+     */
+    private Node<E> rebuild(Node<E> node)
+    {
+        int n = node.subtreeSize;
+        vine = flatten(node, null);
+        Node<E> rebuilt = buildBalanced(n);
+        vine = null;
+        return rebuilt;
+    }
+
+    /**
+     * Links the nodes of a subtree in order through their right children in front of a list.
+     *
+     * @param node - the root of the subtree
+     * @param rest - the list that follows the subtree
+     * @return the first node of the list
+     */
+    private Node<E> flatten(Node<E> node, Node<E> rest)
+    {
+        if (node == null) return rest;
+
+        node = own(node); // a rebuilt subtree may hold nodes a snapshot shares
+        Node<E> left = node.left;
+        node.left = null;
+        node.right = flatten(node.right, rest);
+        return flatten(left, node);
     }
 
+    /**
+     * Takes the next n nodes of the vine and links them into a perfectly balanced subtree.
+     *
+     * @param n - the number of nodes in the subtree
+     * @return the root of the subtree
+     */
+    private Node<E> buildBalanced(int n)
+    {
+        if (n == 0) return null;
+
+        int leftSize = (n - 1) / 2;
+        Node<E> left = buildBalanced(leftSize);
+        Node<E> node = vine;
+        vine = vine.right;
+        node.left = left;
+        node.right = buildBalanced(n - 1 - leftSize);
+        refresh(node);
+        return node;
+    }
 
 /**
  * Gets the greatest node that is less than the node being removed
@@ -1015,12 +3608,12 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
  * @param s - the node to the left
  * @return the predecessor
  */
-    private E getPredecessor(Node<E> s)
+    private Node<E> getPredecessor(Node<E> s)
     {
         Node<E> n = s;
         while (n.right != null)
             n = n.right;
-        return n.data;
+        return n;
     }
 
     /**
@@ -1070,10 +3663,48 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
     @Override
     public String toString()
     {
-        Iter strIter = new Iter("inorder");
-        return String.valueOf(strIter.tree);
+        StringBuilder str = new StringBuilder();
+        try
+        {
+            writeTo(str, Integer.MAX_VALUE);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e); // a StringBuilder does not throw
+        }
+        return str.toString();
     }
 
+    /**
+     * Writes the string representation of this tree to the output as the elements are walked in order, so no
+     * copy of the tree is made. After maxNodes elements the rest is replaced by "...".
+     * 
+     * @param out - where the string is written
+     * @param maxNodes - the most elements written
+     * @throws IOException if the output cannot be written
+     * @throws IllegalArgumentException if maxNodes is negative
+     */
+    public void writeTo(Appendable out, int maxNodes) throws IOException
+    {
+        if (out == null) throw new NullPointerException("No null output.");
+        if (maxNodes < 0) throw new IllegalArgumentException("The limit cannot be negative.");
+
+        out.append('[');
+        Walk walk = new Walk(root);
+        int written = 0;
+        for (Node<E> node = walk.next(); node != null; node = walk.next())
+        {
+            if (written > 0) out.append(", ");
+            if (written == maxNodes)
+            {
+                out.append("...");
+                break;
+            }
+            out.append(String.valueOf(node.data));
+            written++;
+        }
+        out.append(']');
+    }
 
     /**
      * Creates a stringbuilder to print the nodes as a tree 
@@ -1084,8 +3715,14 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
     public String toStringTreeFormat()
     {
         StringBuilder str = new StringBuilder();
-
-        preOrderPrint(root, 0, str);
+        try
+        {
+            writeTreeFormat(str, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e); // a StringBuilder does not throw
+        }
         return str.toString();
     }
 
@@ -1094,39 +3731,85 @@ public class BST<E extends Comparable<E>> extends Object implements Iterable<E>,
      * format. The string representation consists of a tree-like representation of this tree. Each node is shown in its own
      * line with the indentation showing the depth of the node in this tree. The root is printed on the first line,
      * followed by its left subtree, followed by its right subtree.
-     * @param tree - the BST node to be printed 
-     * @param level - the level in the BST
-     * @param output - the string result  of the tree
+     * The nodes are written to the output as they are visited, using a stack instead of recursion and one shared string
+     * of spaces for the indentation. At most maxNodes nodes and maxDepth levels are written, a line with "..." shows
+     * where the output was cut off.
+     * @param out - where the tree is written
+     * @param maxNodes - the most nodes written
+     * @param maxDepth - the most levels written, the root is level 1
+     * @throws IOException if the output cannot be written
+     * @throws IllegalArgumentException if a limit is negative
      * 
      * @author Professor Klukowska
      */
-    private void preOrderPrint(Node<E> tree, int level, StringBuilder output) 
+    public void writeTreeFormat(Appendable out, int maxNodes, int maxDepth) throws IOException
     {
-        if (tree != null) 
+        if (out == null) throw new NullPointerException("No null output.");
+        if (maxNodes < 0 || maxDepth < 0) throw new IllegalArgumentException("The limits cannot be negative.");
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Node<E>[] nodes = (Node<E>[]) new Node[height() + 2]; // the nodes still to be written, null children included
+        int[] levels = new int[nodes.length]; // the level of each of those nodes
+        String spaces = "";
+        int depth = 0;
+        int written = 0;
+
+        nodes[depth] = root;
+        levels[depth++] = 0;
+        while (depth > 0)
         {
-            String spaces = "\n";
-            if (level > 0) {
-                for (int i = 0; i < level - 1; i++)
-                    spaces += "   ";
-                spaces += "|--";
+            Node<E> tree = nodes[--depth];
+            int level = levels[depth];
+            nodes[depth] = null;
+
+            if (tree != null && written == maxNodes)
+            {
+                out.append("\n...");
+                return;
             }
-            output.append(spaces);
-            output.append(tree.data);
-            preOrderPrint(tree.left, level + 1, output);
-            preOrderPrint(tree.right, level + 1, output);
-        }
-        // uncomment the part below to show "null children" in the output
-        else 
-        {
-            String spaces = "\n";
-            if (level > 0) 
+            if (level > 0 && spaces.length() < 3 * (level - 1))
+            {
+                StringBuilder longer = new StringBuilder(Math.max(6 * (level - 1), 12));
+                while (longer.length() < longer.capacity()) longer.append(' ');
+                spaces = longer.toString(); // grown by doubling so it is only rebuilt a few times
+            }
+            out.append('\n');
+            if (level > 0)
+            {
+                out.append(spaces, 0, 3 * (level - 1));
+                out.append("|--");
+            }
+            if (level >= maxDepth)
+            {
+                out.append("...");
+                continue;
+            }
+            if (tree == null)
+            {
+                out.append("null");
+                continue;
+            }
+            out.append(String.valueOf(tree.data));
+            written++;
+
+            if (level + 1 >= maxDepth)
+            {
+                if (tree.left != null || tree.right != null)
+                {
+                    nodes[depth] = null; // the children are cut off, one "..." line stands for them
+                    levels[depth++] = maxDepth;
+                }
+                continue;
+            }
+            if (depth + 2 > nodes.length)
             {
-                for (int i = 0; i < level - 1; i++)
-                    spaces += "   ";
-                spaces += "|--";
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                levels = Arrays.copyOf(levels, levels.length * 2);
             }
-            output.append(spaces);
-            output.append("null");
+            nodes[depth] = tree.right;
+            levels[depth++] = level + 1;
+            nodes[depth] = tree.left;
+            levels[depth++] = level + 1;
         }
     }
 }
\ No newline at end of file
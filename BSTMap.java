@@ -0,0 +1,678 @@
+package project6;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+
+/**
+ * A generic implementation of a binary search tree that maps keys to values. It uses the same node structure as BST
+ * (children, height and subtree size) with a value stored next to the key, so a value can be replaced in place.
+ * get, put, putIfAbsent, compute, merge and remove all find their key with a single descent from the root.
+ * The keys are ordered using their natural ordering and null keys or values are not allowed. This implementation provides guaranteed O(H).
+ *
+ * @author reemaamhaz
+ */
+public class BSTMap<K extends Comparable<K>, V> implements Iterable<Map.Entry<K, V>>
+{
+    private int size = 0; // the number of keys in the map
+    private Node<K, V> root = null; // the root of the tree (null when empty)
+
+    private V previous; // the value a key had before the last update, set by update
+    private V updated; // the value a key has after the last update, set by update
+    private Node<K, V> detached; // the node unlinked by removeMax
+
+    /**
+     * Constructs a new, empty map, sorted according to the natural ordering of its keys.
+     */
+    public BSTMap()
+    {
+        this.root = null;
+    }
+
+    /**
+     * This private, static class is a nested class that constructs a node of the map.
+     * It carries the key and its value, the reference to the left and right child,
+     * its height, and the size of its subtree so entries can be found by their position.
+     */
+    private static class Node<K, V>
+    {
+        K key; // the key that orders the node
+        V value; // the value mapped to the key
+        Node<K, V> left = null; // the left child
+        Node<K, V> right = null; // the right child
+        int height = 1; // keep track of node's height
+        int subtreeSize = 1; // the number of nodes in this subtree
+
+        /**
+         * Constructs node with the key and its value
+         *
+         * @param k - the key
+         * @param v - the value
+         */
+        Node(K k, V v)
+        {
+            this.key = k;
+            this.value = v;
+        }
+    }
+
+    /**
+     * Returns the number of keys in this map.
+     *
+     * @return the number of keys
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * This method returns true if this map contains no keys.
+     *
+     * @return boolean true or false if the map does not have any keys
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Removes all keys from the map.
+     */
+    public void clear()
+    {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Returns the value mapped to the key or null if the key is not in the map. -- performance O(H)
+     *
+     * @param key - the key to look up
+     * @return the value or null
+     * @throws ClassCastException if the key cannot be compared with the keys in the map
+     * @throws NullPointerException if the key is null
+     */
+    public V get(Object key)
+    {
+        Node<K, V> node = find(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * This method returns true if the map contains the key.
+     *
+     * @param key - the key to look up
+     * @return true or false if the key is in the map
+     */
+    public boolean containsKey(Object key)
+    {
+        return find(key) != null;
+    }
+
+    /**
+     * Walks down from the root to the node holding the key.
+     *
+     * @param key - the key to look up
+     * @return the node or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    private Node<K, V> find(Object key)
+    {
+        if (key == null) throw new NullPointerException("No null keys.");
+        K k = (K) key;
+
+        Node<K, V> node = root;
+        while (node != null)
+        {
+            int comp = k.compareTo(node.key);
+            if (comp == 0)
+            {
+                return node;
+            }
+            node = comp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Maps the key to the value, replacing the value in place if the key is already present.
+     *
+     * @param key - the key
+     * @param value - the value
+     * @return the previous value of the key or null if it was not present
+     */
+    public V put(K key, V value)
+    {
+        if (value == null) throw new NullPointerException("No null values.");
+        return apply(key, (k, old) -> value);
+    }
+
+    /**
+     * Maps the key to the value only if the key is not already present.
+     *
+     * @param key - the key
+     * @param value - the value
+     * @return the current value of the key or null if the value was added
+     */
+    public V putIfAbsent(K key, V value)
+    {
+        if (value == null) throw new NullPointerException("No null values.");
+        return apply(key, (k, old) -> old == null ? value : old);
+    }
+
+    /**
+     * Computes a new value for the key from its current value (null if absent). The key is removed
+     * if the function returns null.
+     *
+     * @param key - the key
+     * @param remapping - computes the new value from the key and the current value
+     * @return the new value or null if the key is not in the map afterwards
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping)
+    {
+        if (remapping == null) throw new NullPointerException("No null functions.");
+        apply(key, remapping);
+        return updated;
+    }
+
+    /**
+     * Maps the key to the value if it is absent, otherwise to the function of the current value and the value.
+     * The key is removed if the function returns null.
+     *
+     * @param key - the key
+     * @param value - the value to be merged
+     * @param remapping - combines the current value with the given value
+     * @return the new value or null if the key is not in the map afterwards
+     */
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remapping)
+    {
+        if (value == null) throw new NullPointerException("No null values.");
+        if (remapping == null) throw new NullPointerException("No null functions.");
+        apply(key, (k, old) -> old == null ? value : remapping.apply(old, value));
+        return updated;
+    }
+
+    /**
+     * Removes the key from the map.
+     *
+     * @param key - the key to be removed
+     * @return the value the key had or null if it was not present
+     * @throws ClassCastException if the key cannot be compared with the keys in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key)
+    {
+        return apply((K) key, (k, old) -> null);
+    }
+
+    /**
+     * Runs one update from the root.
+     *
+     * @param key - the key to update
+     * @param remapping - computes the new value, null removes the key
+     * @return the value the key had before the update
+     */
+    private V apply(K key, BiFunction<? super K, ? super V, ? extends V> remapping)
+    {
+        if (key == null) throw new NullPointerException("No null keys.");
+        previous = null;
+        updated = null;
+        root = update(root, key, remapping);
+        return previous;
+    }
+
+    /**
+     * Finds the position of the key in a single descent and changes it in place: a missing key is added as a leaf,
+     * a present key has its value replaced, or is removed when the new value is null.
+     * -- updates the size, height, and subtree size of the nodes that were visited
+     *
+     * @param node - the current node
+     * @param key - the key to update
+     * @param remapping - computes the new value, null removes the key
+     * @return the node that takes the place of the current node
+     */
+    private Node<K, V> update(Node<K, V> node, K key, BiFunction<? super K, ? super V, ? extends V> remapping)
+    {
+        if (node == null)
+        {
+            V value = remapping.apply(key, null);
+            if (value == null) return null;
+            size++;
+            updated = value;
+            return new Node<K, V>(key, value);
+        }
+
+        int comp = key.compareTo(node.key);
+        if (comp == 0)
+        {
+            previous = node.value;
+            V value = remapping.apply(node.key, node.value);
+            if (value != null)
+            {
+                node.value = value; // same key so the shape of the tree does not change
+                updated = value;
+                return node;
+            }
+            return removeNode(node);
+        }
+
+        int s = size;
+        if (comp < 0)
+        {
+            node.left = update(node.left, key, remapping);
+        }
+        else
+        {
+            node.right = update(node.right, key, remapping);
+        }
+        node.subtreeSize += size - s;
+        updateHeight(node);
+        return node;
+    }
+
+    /**
+     * Unlinks a node and returns the node that takes its place: its only child or, when it has two children,
+     * the node itself holding the entry of its predecessor.
+     *
+     * @param node - the node to be removed
+     * @return the replacement of the node
+     */
+    private Node<K, V> removeNode(Node<K, V> node)
+    {
+        size--;
+        if (node.left == null) return node.right;
+        if (node.right == null) return node.left;
+
+        node.left = removeMax(node.left);
+        node.key = detached.key;
+        node.value = detached.value;
+        detached = null;
+        node.subtreeSize--;
+        updateHeight(node);
+        return node;
+    }
+
+    /**
+     * Unlinks the largest node of a subtree and keeps it in detached.
+     *
+     * @param node - the root of the subtree
+     * @return the root of the subtree without its largest node
+     */
+    private Node<K, V> removeMax(Node<K, V> node)
+    {
+        if (node.right == null)
+        {
+            detached = node;
+            return node.left;
+        }
+        node.right = removeMax(node.right);
+        node.subtreeSize--;
+        updateHeight(node);
+        return node;
+    }
+
+    /**
+     * Updates the height of a node based on its children
+     *
+     * @param node - the node
+     */
+    private void updateHeight(Node<K, V> node)
+    {
+        int left = node.left == null ? 0 : node.left.height;
+        int right = node.right == null ? 0 : node.right.height;
+        node.height = Math.max(left, right) + 1;
+    }
+
+    /**
+     * Returns the height of this tree. The height of a leaf is 1.
+     *
+     * @return the height of the tree or 0 if empty
+     */
+    public int height()
+    {
+        return root == null ? 0 : root.height;
+    }
+
+    /**
+     * Returns the entry at the specified position in the key order (0 based indexing).
+     *
+     * @param i - index of the entry to be returned
+     * @return the entry at the index
+     * @throws IndexOutOfBoundsException if the index is negative or not less than size
+     */
+    public Map.Entry<K, V> getEntry(int i)
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+
+        Node<K, V> node = root;
+        while (true)
+        {
+            int leftSize = node.left == null ? 0 : node.left.subtreeSize;
+            if (i < leftSize)
+            {
+                node = node.left;
+            }
+            else if (i == leftSize)
+            {
+                return entry(node);
+            }
+            else
+            {
+                i -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of keys in the map that are strictly less than the given key, which is the index
+     * the key has or would have in the key order.
+     *
+     * @param key - the key to rank
+     * @return the number of smaller keys
+     */
+    public int rank(K key)
+    {
+        if (key == null) throw new NullPointerException("No null keys.");
+
+        int rank = 0;
+        Node<K, V> node = root;
+        while (node != null)
+        {
+            int comp = key.compareTo(node.key);
+            if (comp < 0)
+            {
+                node = node.left;
+            }
+            else
+            {
+                int leftSize = node.left == null ? 0 : node.left.subtreeSize;
+                if (comp == 0) return rank + leftSize;
+                rank += leftSize + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the entry with the least key greater than or equal to the given key, or null if there is none.
+     *
+     * @param key - the key
+     * @return the ceiling entry or null
+     */
+    public Map.Entry<K, V> ceilingEntry(K key)
+    {
+        return entry(search(key, true, true));
+    }
+
+    /**
+     * Returns the entry with the greatest key less than or equal to the given key, or null if there is none.
+     *
+     * @param key - the key
+     * @return the floor entry or null
+     */
+    public Map.Entry<K, V> floorEntry(K key)
+    {
+        return entry(search(key, false, true));
+    }
+
+    /**
+     * Returns the entry with the least key strictly greater than the given key, or null if there is none.
+     *
+     * @param key - the key
+     * @return the higher entry or null
+     */
+    public Map.Entry<K, V> higherEntry(K key)
+    {
+        return entry(search(key, true, false));
+    }
+
+    /**
+     * Returns the entry with the greatest key strictly less than the given key, or null if there is none.
+     *
+     * @param key - the key
+     * @return the lower entry or null
+     */
+    public Map.Entry<K, V> lowerEntry(K key)
+    {
+        return entry(search(key, false, false));
+    }
+
+    /**
+     * Returns the entry with the least key or null if the map is empty.
+     *
+     * @return the first entry or null
+     */
+    public Map.Entry<K, V> firstEntry()
+    {
+        Node<K, V> node = root;
+        while (node != null && node.left != null)
+        {
+            node = node.left;
+        }
+        return entry(node);
+    }
+
+    /**
+     * Returns the entry with the greatest key or null if the map is empty.
+     *
+     * @return the last entry or null
+     */
+    public Map.Entry<K, V> lastEntry()
+    {
+        Node<K, V> node = root;
+        while (node != null && node.right != null)
+        {
+            node = node.right;
+        }
+        return entry(node);
+    }
+
+    /**
+     * Finds the closest node above or below a key in one descent, remembering the last node
+     * that was on the wanted side of the key.
+     *
+     * @param key - the key
+     * @param above - true to look for a greater key, false to look for a smaller key
+     * @param inclusive - true if a node with the same key is accepted
+     * @return the closest node or null
+     */
+    private Node<K, V> search(K key, boolean above, boolean inclusive)
+    {
+        if (key == null) throw new NullPointerException("No null keys.");
+
+        Node<K, V> best = null;
+        Node<K, V> node = root;
+        while (node != null)
+        {
+            int comp = key.compareTo(node.key);
+            if (comp == 0 && inclusive)
+            {
+                return node;
+            }
+            if (above ? comp < 0 : comp > 0)
+            {
+                best = node;
+                node = above ? node.left : node.right;
+            }
+            else
+            {
+                node = above ? node.right : node.left;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns a new map holding the entries whose keys lie between the two keys.
+     *
+     * @param fromKey - the low end of the range
+     * @param fromInclusive - true if the low end is part of the range
+     * @param toKey - the high end of the range
+     * @param toInclusive - true if the high end is part of the range
+     * @return a map with the entries in the range
+     * @throws IllegalArgumentException if fromKey is bigger than toKey
+     */
+    public BSTMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive)
+    {
+        if (fromKey == null || toKey == null) throw new NullPointerException("No null parameters");
+        if (fromKey.compareTo(toKey) > 0) throw new IllegalArgumentException("The start key cannot be bigger than end key");
+
+        ArrayList<Node<K, V>> range = new ArrayList<Node<K, V>>();
+        collect(root, range, fromKey, fromInclusive, toKey, toInclusive);
+
+        BSTMap<K, V> sub = new BSTMap<K, V>();
+        sub.root = build(range, 0, range.size() - 1);
+        sub.size = range.size();
+        return sub;
+    }
+
+    /**
+     * Adds the nodes whose keys are in the range to a list in ascending order, only visiting subtrees that can overlap the range.
+     *
+     * @param node - the current node
+     * @param range - the list being filled
+     * @param from - the low end of the range
+     * @param fromInclusive - true if the low end is part of the range
+     * @param to - the high end of the range
+     * @param toInclusive - true if the high end is part of the range
+     */
+    private void collect(Node<K, V> node, ArrayList<Node<K, V>> range, K from, boolean fromInclusive, K to, boolean toInclusive)
+    {
+        if (node == null) return;
+
+        int fromComp = from.compareTo(node.key);
+        int toComp = to.compareTo(node.key);
+        if (fromComp < 0)
+        {
+            collect(node.left, range, from, fromInclusive, to, toInclusive);
+        }
+        if ((fromComp < 0 || (fromComp == 0 && fromInclusive)) && (toComp > 0 || (toComp == 0 && toInclusive)))
+        {
+            range.add(node);
+        }
+        if (toComp > 0)
+        {
+            collect(node.right, range, from, fromInclusive, to, toInclusive);
+        }
+    }
+
+    /**
+     * Builds a balanced tree of new nodes from a sorted list of nodes.
+     *
+     * @param nodes - the nodes in ascending order
+     * @param low - the first index of the range to build
+     * @param high - the last index of the range to build
+     * @return the root of the new subtree
+     */
+    private Node<K, V> build(ArrayList<Node<K, V>> nodes, int low, int high)
+    {
+        if (low > high) return null;
+        int mid = (low + high) >>> 1;
+        Node<K, V> node = new Node<K, V>(nodes.get(mid).key, nodes.get(mid).value);
+        node.left = build(nodes, low, mid - 1);
+        node.right = build(nodes, mid + 1, high);
+        node.subtreeSize = high - low + 1;
+        updateHeight(node);
+        return node;
+    }
+
+    /**
+     * Makes an immutable entry holding the key and value of a node.
+     *
+     * @param node - the node or null
+     * @return the entry or null if the node is null
+     */
+    private Map.Entry<K, V> entry(Node<K, V> node)
+    {
+        return node == null ? null : new AbstractMap.SimpleImmutableEntry<K, V>(node.key, node.value);
+    }
+
+    /**
+     * This method returns an iterator over the entries in ascending key order.
+     *
+     * @return an iterator
+     */
+    public Iterator<Map.Entry<K, V>> iterator()
+    {
+        return new Iter();
+    }
+
+    /**
+     * This private class is an in-order iterator that keeps the path to the next node on a stack
+     * instead of copying the whole map.
+     */
+    private class Iter implements Iterator<Map.Entry<K, V>>
+    {
+        private final ArrayList<Node<K, V>> stack = new ArrayList<Node<K, V>>(); // nodes whose entry and right subtree are still to come
+
+        /**
+         * Constructor that instantiates a new instance of the iterator class and moves to the smallest key.
+         */
+        Iter()
+        {
+            pushLeft(root);
+        }
+
+        /**
+         * Pushes a node and its chain of left children.
+         *
+         * @param node - the top of the chain
+         */
+        private void pushLeft(Node<K, V> node)
+        {
+            while (node != null)
+            {
+                stack.add(node);
+                node = node.left;
+            }
+        }
+
+        /**
+         * This method returns whether there is another entry
+         *
+         * @return boolean true/false if there is another entry
+         */
+        public boolean hasNext()
+        {
+            return !stack.isEmpty();
+        }
+
+        /**
+         * This method returns the next entry in key order
+         *
+         * @throws NoSuchElementException if there is not another entry
+         * @return the next entry
+         */
+        public Map.Entry<K, V> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException("Next node does not exist.");
+            }
+            Node<K, V> node = stack.remove(stack.size() - 1);
+            pushLeft(node.right);
+            return entry(node);
+        }
+    }
+
+    /**
+     * Returns a string representation of this map, the entries in key order between braces and separated by commas.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder str = new StringBuilder("{");
+        for (Map.Entry<K, V> e : this)
+        {
+            if (str.length() > 1) str.append(", ");
+            str.append(e.getKey()).append('=').append(e.getValue());
+        }
+        return str.append('}').toString();
+    }
+}
@@ -0,0 +1,586 @@
+package project6;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A generic implementation of a binary search tree that allows duplicate elements. Equal elements share one node
+ * that carries how many times the element occurs, so adding a duplicate only increments a counter instead of
+ * allocating another node. The subtree size of each node counts the occurrences in its subtree, so get and rank
+ * see every occurrence the same way the iterator does. add, remove and count each use a single descent from the root.
+ * The elements are ordered using their natural ordering. This implementation provides guaranteed O(H).
+ *
+ * @author reemaamhaz
+ */
+public class BSTMultiset<E extends Comparable<E>> implements Iterable<E>
+{
+    private int size = 0; // the number of occurrences in the multiset
+    private int distinct = 0; // the number of nodes in the tree
+    private Node<E> root = null; // the root of the tree (null when empty)
+
+    private int previous; // the count an element had before the last add or remove
+    private Node<E> detached; // the node unlinked by removeMax
+
+    /**
+     * Constructs a new, empty multiset, sorted according to the natural ordering of its elements.
+     */
+    public BSTMultiset()
+    {
+        this.root = null;
+    }
+
+    /**
+     * This private, static class is a nested class that constructs a node of the multiset.
+     * The node carries the element, how many times it occurs, the reference to the left and right child,
+     * its height, and the number of occurrences in its subtree.
+     */
+    private static class Node<E>
+    {
+        E data; // the element stored in the node
+        int count; // the number of occurrences of the element
+        Node<E> left = null; // the left child
+        Node<E> right = null; // the right child
+        int height = 1; // keep track of node's height
+        int subtreeSize; // the number of occurrences in this subtree
+
+        /**
+         * Constructs node with the element and its number of occurrences
+         *
+         * @param d - the element
+         * @param n - the number of occurrences
+         */
+        Node(E d, int n)
+        {
+            this.data = d;
+            this.count = n;
+            this.subtreeSize = n;
+        }
+    }
+
+    /**
+     * Returns the number of occurrences in the multiset, counting every duplicate.
+     *
+     * @return the number of occurrences
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of different elements in the multiset.
+     *
+     * @return the number of distinct elements
+     */
+    public int distinctSize()
+    {
+        return distinct;
+    }
+
+    /**
+     * This method returns true if this multiset contains no elements.
+     *
+     * @return boolean true or false if the multiset does not have any elements
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Removes all elements from the multiset.
+     */
+    public void clear()
+    {
+        root = null;
+        size = 0;
+        distinct = 0;
+    }
+
+    /**
+     * Returns the height of this tree. The height of a leaf is 1.
+     *
+     * @return the height of the tree or 0 if empty
+     */
+    public int height()
+    {
+        return root == null ? 0 : root.height;
+    }
+
+    /**
+     * Adds one occurrence of the element.
+     *
+     * @param data - the element to be added
+     * @return always true because a multiset accepts duplicates
+     */
+    public boolean add(E data)
+    {
+        add(data, 1);
+        return true;
+    }
+
+    /**
+     * Adds n occurrences of the element.
+     *
+     * @param data - the element to be added
+     * @param n - the number of occurrences to add
+     * @return the number of occurrences the element had before the call
+     * @throws IllegalArgumentException if n is negative
+     */
+    public int add(E data, int n)
+    {
+        if (data == null) throw new NullPointerException("No null data.");
+        if (n < 0) throw new IllegalArgumentException("Cannot add a negative number of occurrences.");
+        previous = 0;
+        if (n > 0)
+        {
+            root = add(root, data, n);
+        }
+        else
+        {
+            previous = count(data);
+        }
+        return previous;
+    }
+
+    /**
+     * Recursively finds the node of the element and adds to its count, or adds a new leaf if the element is not present.
+     * -- increments the size and height of the nodes that were visited
+     *
+     * @param node - the current node
+     * @param data - the element to be added
+     * @param n - the number of occurrences to add
+     * @return the node that takes the place of the current node
+     */
+    private Node<E> add(Node<E> node, E data, int n)
+    {
+        if (node == null)
+        {
+            size += n;
+            distinct++;
+            return new Node<E>(data, n);
+        }
+
+        int comp = data.compareTo(node.data);
+        if (comp == 0)
+        {
+            previous = node.count;
+            node.count += n;
+            node.subtreeSize += n;
+            size += n;
+            return node;
+        }
+
+        if (comp < 0)
+        {
+            node.left = add(node.left, data, n);
+        }
+        else
+        {
+            node.right = add(node.right, data, n);
+        }
+        node.subtreeSize += n;
+        updateHeight(node);
+        return node;
+    }
+
+    /**
+     * Removes one occurrence of the element if it is present.
+     *
+     * @param o - the element to be removed
+     * @return true if the multiset contained the element
+     * @throws ClassCastException if the element cannot be compared with the elements in the multiset
+     */
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o)
+    {
+        if (o == null) throw new NullPointerException("No null objects.");
+        return remove((E) o, 1) > 0;
+    }
+
+    /**
+     * Removes up to n occurrences of the element. The node of the element is removed once its count reaches zero.
+     *
+     * @param data - the element to be removed
+     * @param n - the number of occurrences to remove
+     * @return the number of occurrences the element had before the call
+     * @throws IllegalArgumentException if n is negative
+     */
+    public int remove(E data, int n)
+    {
+        if (data == null) throw new NullPointerException("No null objects.");
+        if (n < 0) throw new IllegalArgumentException("Cannot remove a negative number of occurrences.");
+        previous = 0;
+        if (n > 0)
+        {
+            root = remove(root, data, n);
+        }
+        else
+        {
+            previous = count(data);
+        }
+        return previous;
+    }
+
+    /**
+     * Recursively finds the node of the element and takes occurrences off its count, unlinking the node when none are left.
+     * -- updates the size and height of the nodes that were visited
+     *
+     * @param node - the current node
+     * @param data - the element to be removed
+     * @param n - the number of occurrences to remove
+     * @return the node that takes the place of the current node
+     */
+    private Node<E> remove(Node<E> node, E data, int n)
+    {
+        if (node == null) return null;
+
+        int comp = data.compareTo(node.data);
+        if (comp == 0)
+        {
+            previous = node.count;
+            if (node.count > n)
+            {
+                node.count -= n;
+                node.subtreeSize -= n;
+                size -= n;
+                return node;
+            }
+            size -= node.count;
+            distinct--;
+            if (node.left == null) return node.right;
+            if (node.right == null) return node.left;
+
+            // two children: the predecessor node moves its element and count into this node
+            node.left = removeMax(node.left);
+            node.data = detached.data;
+            node.count = detached.count;
+            detached = null;
+            node.subtreeSize = node.count + (node.left == null ? 0 : node.left.subtreeSize) + node.right.subtreeSize;
+            updateHeight(node);
+            return node;
+        }
+
+        int s = size;
+        if (comp < 0)
+        {
+            node.left = remove(node.left, data, n);
+        }
+        else
+        {
+            node.right = remove(node.right, data, n);
+        }
+        node.subtreeSize += size - s;
+        updateHeight(node);
+        return node;
+    }
+
+    /**
+     * Unlinks the largest node of a subtree and keeps it in detached.
+     *
+     * @param node - the root of the subtree
+     * @return the root of the subtree without its largest node
+     */
+    private Node<E> removeMax(Node<E> node)
+    {
+        if (node.right == null)
+        {
+            detached = node;
+            return node.left;
+        }
+        node.right = removeMax(node.right);
+        node.subtreeSize -= detached.count;
+        updateHeight(node);
+        return node;
+    }
+
+    /**
+     * Updates the height of a node based on its children
+     *
+     * @param node - the node
+     */
+    private void updateHeight(Node<E> node)
+    {
+        int left = node.left == null ? 0 : node.left.height;
+        int right = node.right == null ? 0 : node.right.height;
+        node.height = Math.max(left, right) + 1;
+    }
+
+    /**
+     * Returns how many times the element occurs. -- performance O(H)
+     *
+     * @param o - the element to count
+     * @return the number of occurrences, 0 if the element is not present
+     * @throws ClassCastException if the element cannot be compared with the elements in the multiset
+     */
+    @SuppressWarnings("unchecked")
+    public int count(Object o)
+    {
+        if (o == null) throw new NullPointerException("No null objects");
+        E data = (E) o;
+
+        Node<E> node = root;
+        while (node != null)
+        {
+            int comp = data.compareTo(node.data);
+            if (comp == 0) return node.count;
+            node = comp < 0 ? node.left : node.right;
+        }
+        return 0;
+    }
+
+    /**
+     * This method returns true if the element occurs at least once.
+     *
+     * @param o - the element we are trying to find
+     * @return true or false if the multiset contains the element
+     */
+    public boolean contains(Object o)
+    {
+        return count(o) > 0;
+    }
+
+    /**
+     * Returns the occurrence at the specified position in this multiset (that uses 0 based indexing),
+     * where every duplicate has its own position like it does in the iterator.
+     *
+     * @param i - index of the occurrence to be returned
+     * @return the element at the index
+     * @throws IndexOutOfBoundsException if the index is negative or not less than size
+     */
+    public E get(int i)
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+
+        Node<E> node = root;
+        while (true)
+        {
+            int leftSize = node.left == null ? 0 : node.left.subtreeSize;
+            if (i < leftSize)
+            {
+                node = node.left;
+            }
+            else if (i < leftSize + node.count)
+            {
+                return node.data;
+            }
+            else
+            {
+                i -= leftSize + node.count;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of occurrences strictly less than the element, which is the index of its first occurrence.
+     *
+     * @param data - the element to rank
+     * @return the number of smaller occurrences
+     */
+    public int rank(E data)
+    {
+        if (data == null) throw new NullPointerException("No null params.");
+
+        int rank = 0;
+        Node<E> node = root;
+        while (node != null)
+        {
+            int comp = data.compareTo(node.data);
+            if (comp < 0)
+            {
+                node = node.left;
+            }
+            else
+            {
+                int leftSize = node.left == null ? 0 : node.left.subtreeSize;
+                if (comp == 0) return rank + leftSize;
+                rank += leftSize + node.count;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Finds the lowest element in the multiset
+     *
+     * @return E - lowest element
+     * @throws NoSuchElementException if the multiset is empty
+     */
+    public E first()
+    {
+        if (isEmpty()) throw new NoSuchElementException("Empty tree");
+        Node<E> node = root;
+        while (node.left != null)
+        {
+            node = node.left;
+        }
+        return node.data;
+    }
+
+    /**
+     * Finds the largest element in the multiset
+     *
+     * @return the largest element or null if the multiset is empty
+     */
+    public E last()
+    {
+        if (isEmpty()) return null;
+        Node<E> node = root;
+        while (node.right != null)
+        {
+            node = node.right;
+        }
+        return node.data;
+    }
+
+    /**
+     * Returns the least element greater than or equal to the given element, or null if there is no such element.
+     *
+     * @param data - the element data we're trying to find the ceiling of
+     * @return the data of the ceiling element
+     */
+    public E ceiling(E data)
+    {
+        if (data == null) throw new NullPointerException("Cannot find ceiling of null.");
+
+        E best = null;
+        Node<E> node = root;
+        while (node != null)
+        {
+            int comp = data.compareTo(node.data);
+            if (comp == 0) return node.data;
+            if (comp < 0)
+            {
+                best = node.data;
+                node = node.left;
+            }
+            else
+            {
+                node = node.right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the greatest element less than or equal to the given element, or null if there is no such element.
+     *
+     * @param data - the element data we're trying to find the floor of
+     * @return the data of the floor element
+     */
+    public E floor(E data)
+    {
+        if (data == null) throw new NullPointerException("Cannot find floor of null.");
+
+        E best = null;
+        Node<E> node = root;
+        while (node != null)
+        {
+            int comp = data.compareTo(node.data);
+            if (comp == 0) return node.data;
+            if (comp > 0)
+            {
+                best = node.data;
+                node = node.right;
+            }
+            else
+            {
+                node = node.left;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * This method returns an iterator over every occurrence in ascending order, repeating duplicates.
+     *
+     * @return an iterator
+     */
+    public Iterator<E> iterator()
+    {
+        return new Iter();
+    }
+
+    /**
+     * This private class is an in-order iterator that keeps the path to the next node on a stack
+     * and hands out the element of a node as many times as it occurs.
+     */
+    private class Iter implements Iterator<E>
+    {
+        private final ArrayList<Node<E>> stack = new ArrayList<Node<E>>(); // nodes whose element and right subtree are still to come
+        private Node<E> current = null; // the node whose occurrences are being returned
+        private int remaining = 0; // occurrences of current still to be returned
+
+        /**
+         * Constructor that instantiates a new instance of the iterator class and moves to the smallest element.
+         */
+        Iter()
+        {
+            pushLeft(root);
+        }
+
+        /**
+         * Pushes a node and its chain of left children.
+         *
+         * @param node - the top of the chain
+         */
+        private void pushLeft(Node<E> node)
+        {
+            while (node != null)
+            {
+                stack.add(node);
+                node = node.left;
+            }
+        }
+
+        /**
+         * This method returns whether there is another occurrence
+         *
+         * @return boolean true/false if there is another occurrence
+         */
+        public boolean hasNext()
+        {
+            return remaining > 0 || !stack.isEmpty();
+        }
+
+        /**
+         * This method returns the next occurrence
+         *
+         * @throws NoSuchElementException if there is not another occurrence
+         * @return the next occurrence
+         */
+        public E next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException("Next node does not exist.");
+            }
+            if (remaining == 0)
+            {
+                current = stack.remove(stack.size() - 1);
+                remaining = current.count;
+                pushLeft(current.right);
+            }
+            remaining--;
+            return current.data;
+        }
+    }
+
+    /**
+     * Returns a string representation of this multiset, every occurrence in ascending order between brackets and separated by commas.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder str = new StringBuilder("[");
+        for (E e : this)
+        {
+            if (str.length() > 1) str.append(", ");
+            str.append(e);
+        }
+        return str.append(']').toString();
+    }
+}
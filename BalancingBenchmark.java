@@ -0,0 +1,191 @@
+package project6;
+
+import java.util.Random;
+
+/**
+ * Measures every balancing mode of BST on the workloads the modes are meant for and prints one table, so the mode
+ * that wins for a deployment can be read off instead of guessed. The operations of a workload are generated before
+ * the clock starts and every cell is the best of a few rounds on a fresh tree, after a warm-up round.
+ *
+ * The workloads:
+ *   SORTED_INGEST - adds keys in ascending order, the worst case for a tree that does not balance
+ *   RANDOM_INGEST - adds keys in random order
+ *   MIXED - half contains, a quarter add and a quarter remove of random keys on a tree holding about half of them
+ *   HOT_KEYS - contains on a full tree where nine lookups in ten go to the same 1% of the keys
+ *
+ * Usage: java project6.BalancingBenchmark [operations] [rounds]
+ *
+ * @author reemaamhaz
+ */
+public class BalancingBenchmark
+{
+    /**
+     * The access patterns the modes are compared on.
+     */
+    private enum Workload { SORTED_INGEST, RANDOM_INGEST, MIXED, HOT_KEYS }
+
+    private static final byte ADD = 0; // the operation adds its key
+    private static final byte REMOVE = 1; // the operation removes its key
+    private static final byte CONTAINS = 2; // the operation looks its key up
+
+    private static final int NONE_SORTED_LIMIT = 5000; // the most sorted keys NONE is run on, it degenerates into a list
+
+    /**
+     * The operations of one workload, generated up front.
+     */
+    private static class Operations
+    {
+        Integer[] preload; // the keys added before the clock starts
+        byte[] ops; // the operation of every step
+        Integer[] keys; // the key of every step
+    }
+
+    /**
+     * Generates the operations of a workload.
+     *
+     * @param workload - the workload
+     * @param n - the number of timed operations
+     * @param random - the source of keys
+     * @return the operations
+     */
+    private static Operations generate(Workload workload, int n, Random random)
+    {
+        Operations o = new Operations();
+        o.ops = new byte[n];
+        o.keys = new Integer[n];
+        switch (workload)
+        {
+            case SORTED_INGEST:
+            case RANDOM_INGEST:
+                o.preload = new Integer[0];
+                for (int i = 0; i < n; i++)
+                {
+                    o.ops[i] = ADD;
+                    o.keys[i] = i;
+                }
+                if (workload == Workload.RANDOM_INGEST) shuffle(o.keys, random);
+                break;
+            case MIXED:
+                o.preload = new Integer[n / 2];
+                for (int i = 0; i < o.preload.length; i++)
+                {
+                    o.preload[i] = random.nextInt(2 * n);
+                }
+                for (int i = 0; i < n; i++)
+                {
+                    int pick = random.nextInt(4);
+                    o.ops[i] = (pick < 2) ? CONTAINS : (pick == 2) ? ADD : REMOVE;
+                    o.keys[i] = random.nextInt(2 * n);
+                }
+                break;
+            default:
+                o.preload = new Integer[n];
+                for (int i = 0; i < n; i++)
+                {
+                    o.preload[i] = i;
+                }
+                shuffle(o.preload, random);
+                int hot = Math.max(1, n / 100);
+                for (int i = 0; i < n; i++)
+                {
+                    o.ops[i] = CONTAINS;
+                    o.keys[i] = (random.nextInt(10) < 9) ? o.preload[random.nextInt(hot)] : random.nextInt(n);
+                }
+                break;
+        }
+        return o;
+    }
+
+    /**
+     * Shuffles keys in place.
+     *
+     * @param keys - the keys
+     * @param random - the source of the order
+     */
+    private static void shuffle(Integer[] keys, Random random)
+    {
+        for (int i = keys.length - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            Integer swap = keys[i];
+            keys[i] = keys[j];
+            keys[j] = swap;
+        }
+    }
+
+    /**
+     * Runs the operations once on a fresh tree.
+     *
+     * @param balancing - the balancing mode
+     * @param o - the operations
+     * @param tree - receives the tree the operations ran on, so its height can be reported
+     * @return the nanoseconds the timed operations took
+     */
+    private static long run(BST.Balancing balancing, Operations o, BST<?>[] tree)
+    {
+        BST<Integer> t = new BST<Integer>(balancing);
+        for (Integer key : o.preload)
+        {
+            t.add(key);
+        }
+        int hits = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < o.ops.length; i++)
+        {
+            switch (o.ops[i])
+            {
+                case ADD: if (t.add(o.keys[i])) hits++; break;
+                case REMOVE: if (t.remove(o.keys[i])) hits++; break;
+                default: if (t.contains(o.keys[i])) hits++; break;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (hits < 0) throw new IllegalStateException(); // keeps the calls from being optimised away
+        tree[0] = t;
+        return elapsed;
+    }
+
+    /**
+     * Runs the matrix from the command line and prints the throughput and the final height of every cell.
+     *
+     * @param args - [operations] [rounds]
+     */
+    public static void main(String[] args)
+    {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        BST.Balancing[] modes = BST.Balancing.values();
+
+        System.out.printf("%d operations, best of %d rounds, Mops/s (height)%n", n, rounds);
+        System.out.printf("%-14s", "");
+        for (BST.Balancing mode : modes)
+        {
+            System.out.printf(" %16s", mode);
+        }
+        System.out.println();
+
+        BST<?>[] tree = new BST<?>[1];
+        for (Workload workload : Workload.values())
+        {
+            System.out.printf("%-14s", workload);
+            for (BST.Balancing mode : modes)
+            {
+                int size = (mode == BST.Balancing.NONE && workload == Workload.SORTED_INGEST) ? Math.min(n, NONE_SORTED_LIMIT) : n;
+                Operations o = generate(workload, size, new Random(42));
+                run(mode, o, tree); // warm-up
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < rounds; r++)
+                {
+                    best = Math.min(best, run(mode, o, tree));
+                }
+                String cell = String.format("%.2f (%d)%s", size / (best / 1e3), tree[0].height(), size < n ? "*" : "");
+                System.out.printf(" %16s", cell);
+            }
+            System.out.println();
+        }
+        if (n > NONE_SORTED_LIMIT)
+        {
+            System.out.printf("* NONE is run on the first %d sorted keys only, it degenerates into a list%n", NONE_SORTED_LIMIT);
+        }
+    }
+}
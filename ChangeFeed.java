@@ -0,0 +1,214 @@
+package project6;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A subscription to the changes of a BST, created by BST.subscribe. The tree records every successful add, remove
+ * and clear as an event in a bounded buffer, and the buffered events are handed to the listener as one batch:
+ *   - when the buffer is full, so a slow listener slows down the writer instead of the buffer growing (back-pressure)
+ *   - at the end of addAll and clear
+ *   - whenever flush is called, for example from a timer
+ * With coalescing on, an element that is added and then removed again (or removed and added again) before the batch
+ * is delivered cancels out, and a clear drops every event buffered before it. Coalescing finds the buffered event of
+ * an element through its hashCode and equals, which must agree with its compareTo.
+ *
+ * A ChangeFeed is not thread safe, like the tree it belongs to.
+ *
+ * @author reemaamhaz
+ */
+public class ChangeFeed<E extends Comparable<E>>
+{
+    /**
+     * The kinds of change that are reported.
+     */
+    public enum Type { ADDED, REMOVED, CLEARED }
+
+    /**
+     * A single change of the tree. CLEARED events have no element.
+     */
+    public static class Event<E>
+    {
+        private final Type type; // what happened
+        private final E element; // the element that was added or removed, null for CLEARED
+
+        /**
+         * Constructs an event.
+         *
+         * @param type - what happened
+         * @param element - the element that was added or removed, null for CLEARED
+         */
+        public Event(Type type, E element)
+        {
+            this.type = type;
+            this.element = element;
+        }
+
+        /**
+         * @return what happened
+         */
+        public Type getType()
+        {
+            return type;
+        }
+
+        /**
+         * @return the element that was added or removed, null for CLEARED
+         */
+        public E getElement()
+        {
+            return element;
+        }
+
+        @Override
+        public String toString()
+        {
+            return element == null ? type.toString() : type + " " + element;
+        }
+    }
+
+    /**
+     * Receives the batches of events of a subscription.
+     */
+    public interface Listener<E>
+    {
+        /**
+         * Called with the events buffered since the last batch, in the order they happened.
+         *
+         * @param batch - the events, never empty
+         */
+        void onChanges(List<Event<E>> batch);
+    }
+
+    private final BST<E> tree; // the tree this feed is subscribed to
+    private final Listener<E> listener; // receives the batches
+    private final Type[] types; // the buffered event types, null where an event was cancelled by coalescing
+    private final Object[] elements; // the buffered elements
+    private final HashMap<Object, Integer> positions; // the buffer slot of the pending event of each element, null without coalescing
+    private int count = 0; // the number of used slots
+    private int live = 0; // the number of used slots that were not cancelled
+    private boolean closed = false; // set once the feed was closed
+
+    /**
+     * Constructs a feed, called by BST.subscribe.
+     *
+     * @param tree - the tree the feed is subscribed to
+     * @param listener - receives the batches
+     * @param capacity - the number of events buffered before a batch is delivered
+     * @param coalesce - true to cancel out changes that undo each other within a batch
+     */
+    ChangeFeed(BST<E> tree, Listener<E> listener, int capacity, boolean coalesce)
+    {
+        if (listener == null) throw new NullPointerException("No null listener.");
+        if (capacity < 1) throw new IllegalArgumentException("The capacity must be at least 1.");
+        this.tree = tree;
+        this.listener = listener;
+        this.types = new Type[capacity];
+        this.elements = new Object[capacity];
+        this.positions = coalesce ? new HashMap<Object, Integer>() : null;
+    }
+
+    /**
+     * Buffers an event, called by the tree. The buffer is delivered first if it is full.
+     *
+     * @param type - what happened
+     * @param element - the element that was added or removed, null for CLEARED
+     */
+    void publish(Type type, E element)
+    {
+        if (positions != null)
+        {
+            if (type == Type.CLEARED)
+            {
+                discard(); // the clear makes every buffered change irrelevant
+            }
+            else
+            {
+                Integer slot = positions.remove(element);
+                if (slot != null)
+                {
+                    // the element changed back, so the buffered event and this one cancel out
+                    types[slot] = null;
+                    elements[slot] = null;
+                    live--;
+                    return;
+                }
+            }
+        }
+        if (count == types.length)
+        {
+            flush();
+        }
+        types[count] = type;
+        elements[count] = element;
+        if (positions != null && element != null)
+        {
+            positions.put(element, count);
+        }
+        count++;
+        live++;
+    }
+
+    /**
+     * Delivers the buffered events to the listener as one batch. Nothing is delivered if no events are buffered.
+     */
+    @SuppressWarnings("unchecked")
+    public void flush()
+    {
+        if (live == 0)
+        {
+            discard();
+            return;
+        }
+        List<Event<E>> batch = new ArrayList<Event<E>>(live);
+        for (int i = 0; i < count; i++)
+        {
+            if (types[i] != null)
+            {
+                batch.add(new Event<E>(types[i], (E) elements[i]));
+            }
+        }
+        discard();
+        listener.onChanges(batch);
+    }
+
+    /**
+     * Empties the buffer without delivering it.
+     */
+    private void discard()
+    {
+        for (int i = 0; i < count; i++)
+        {
+            types[i] = null;
+            elements[i] = null;
+        }
+        count = 0;
+        live = 0;
+        if (positions != null)
+        {
+            positions.clear();
+        }
+    }
+
+    /**
+     * Returns the number of events waiting to be delivered.
+     *
+     * @return the number of buffered events
+     */
+    public int pending()
+    {
+        return live;
+    }
+
+    /**
+     * Delivers the buffered events and stops receiving changes from the tree.
+     */
+    public void close()
+    {
+        if (closed) return;
+        closed = true;
+        tree.unsubscribe(this);
+        flush();
+    }
+}
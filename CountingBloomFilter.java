@@ -0,0 +1,274 @@
+package project6;
+
+import java.util.Arrays;
+
+/**
+ * A counting Bloom filter that tells whether an element might be in a set. Every element sets k of m counters, chosen
+ * from its hashCode by double hashing, and removing it lowers them again, so deletes work unlike in a plain Bloom
+ * filter. An element whose counters are not all above 0 is certainly not in the set; one whose counters are all above
+ * 0 probably is, with a false-positive rate that grows with the number of elements.
+ *
+ * The counters are single bytes. A counter that reaches 255 stays there and is never lowered again, which keeps the
+ * filter free of false negatives at the cost of a slightly higher false-positive rate. Elements that are equal by
+ * compareTo must have the same hashCode.
+ *
+ * The filter counts how often a lookup was answered with a certain no and, through the BST it belongs to, how often a
+ * probable yes turned out to be wrong, so the observed false-positive rate can be compared to the expected one. Only
+ * mightContain and the contains calls of the tree are counted; the probes the tree makes for its own searches are not.
+ *
+ * @author reemaamhaz
+ */
+public class CountingBloomFilter<E>
+{
+    private static final int SATURATED = 0xFF; // the value a counter sticks at
+
+    private final byte[] counters; // the counters, read as unsigned bytes
+    private final int hashes; // the number of counters of every element (k)
+    private int count = 0; // the number of elements in the filter
+    private long negatives = 0; // lookups that were answered with a certain no
+    private long falsePositives = 0; // lookups answered with a probable yes for an element that was not in the set
+
+    /**
+     * Constructs a filter sized for a number of elements and a false-positive rate: m = -n ln p / (ln 2)^2 counters
+     * and k = m / n ln 2 hashes per element.
+     *
+     * @param expectedElements - the number of elements the filter is sized for
+     * @param falsePositiveRate - the false-positive rate wanted at that number of elements
+     * @throws IllegalArgumentException if expectedElements is not positive or the rate is not between 0 and 1
+     */
+    public CountingBloomFilter(int expectedElements, double falsePositiveRate)
+    {
+        if (expectedElements < 1) throw new IllegalArgumentException("The filter must be sized for at least 1 element.");
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+        {
+            throw new IllegalArgumentException("The false-positive rate must be between 0 and 1.");
+        }
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-expectedElements * Math.log(falsePositiveRate) / (ln2 * ln2));
+        if (m > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("The filter would be too large.");
+        this.counters = new byte[(int) Math.max(m, 8)];
+        this.hashes = (int) Math.max(1, Math.round((double) counters.length / expectedElements * ln2));
+    }
+
+    /**
+     * Constructs a copy of a filter, without its lookup counts.
+     *
+     * @param other - the filter to copy
+     */
+    private CountingBloomFilter(CountingBloomFilter<E> other)
+    {
+        this.counters = other.counters.clone();
+        this.hashes = other.hashes;
+        this.count = other.count;
+    }
+
+    /**
+     * Returns a copy of this filter holding the same elements, with its lookup counts at 0.
+     *
+     * @return the copy
+     */
+    public CountingBloomFilter<E> copy()
+    {
+        return new CountingBloomFilter<E>(this);
+    }
+
+    /**
+     * Adds an element by raising its counters.
+     *
+     * @param element - the element
+     */
+    public void add(Object element)
+    {
+        int h = element.hashCode();
+        int h1 = mix(h);
+        int h2 = mix(h ^ 0x5bd1e995) | 1; // a second hash, odd so it is never 0
+        for (int i = 0; i < hashes; i++)
+        {
+            int index = index(h1 + i * h2);
+            int value = counters[index] & 0xFF;
+            if (value != SATURATED)
+            {
+                counters[index] = (byte) (value + 1);
+            }
+        }
+        count++;
+    }
+
+    /**
+     * Removes an element by lowering its counters. The element must have been added before, removing an element
+     * that is not in the filter would lower the counters of other elements.
+     *
+     * @param element - the element
+     */
+    public void remove(Object element)
+    {
+        int h = element.hashCode();
+        int h1 = mix(h);
+        int h2 = mix(h ^ 0x5bd1e995) | 1;
+        for (int i = 0; i < hashes; i++)
+        {
+            int index = index(h1 + i * h2);
+            int value = counters[index] & 0xFF;
+            if (value != SATURATED && value != 0)
+            {
+                counters[index] = (byte) (value - 1); // a saturated counter may stand for more elements than it can count
+            }
+        }
+        count--;
+    }
+
+    /**
+     * Checks if an element might be in the filter. A false answer is always right.
+     *
+     * @param element - the element
+     * @return false if the element is certainly not in the filter, true if it probably is
+     */
+    public boolean mightContain(Object element)
+    {
+        if (probe(element)) return true;
+        negatives++;
+        return false;
+    }
+
+    /**
+     * Does the work of mightContain without counting the lookup, for the searches the tree makes for itself.
+     *
+     * @param element - the element
+     * @return false if the element is certainly not in the filter, true if it probably is
+     */
+    boolean probe(Object element)
+    {
+        int h = element.hashCode();
+        int h1 = mix(h);
+        int h2 = mix(h ^ 0x5bd1e995) | 1;
+        for (int i = 0; i < hashes; i++)
+        {
+            if (counters[index(h1 + i * h2)] == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that the last lookup said the element was probably there but it was not, called by the tree.
+     */
+    void recordFalsePositive()
+    {
+        falsePositives++;
+    }
+
+    /**
+     * Removes all elements. The lookup counts are kept.
+     */
+    public void clear()
+    {
+        Arrays.fill(counters, (byte) 0);
+        count = 0;
+    }
+
+    /**
+     * Returns the number of elements in the filter.
+     *
+     * @return the number of elements
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the false-positive rate expected for the current number of elements, (1 - e^(-kn/m))^k.
+     *
+     * @return the expected false-positive rate
+     */
+    public double expectedFalsePositiveRate()
+    {
+        return Math.pow(1 - Math.exp(-(double) hashes * count / counters.length), hashes);
+    }
+
+    /**
+     * Returns the share of lookups for elements that were not in the set that the filter did not rule out.
+     *
+     * @return the observed false-positive rate, 0 if there were no such lookups yet
+     */
+    public double observedFalsePositiveRate()
+    {
+        long misses = negatives + falsePositives;
+        return misses == 0 ? 0 : (double) falsePositives / misses;
+    }
+
+    /**
+     * Returns the number of lookups that were answered with a certain no.
+     *
+     * @return the number of ruled out lookups
+     */
+    public long getNegativeCount()
+    {
+        return negatives;
+    }
+
+    /**
+     * Returns the number of lookups the filter did not rule out for elements that were not in the set.
+     *
+     * @return the number of false positives
+     */
+    public long getFalsePositiveCount()
+    {
+        return falsePositives;
+    }
+
+    /**
+     * Sets the lookup counts back to 0.
+     */
+    public void resetCounts()
+    {
+        negatives = 0;
+        falsePositives = 0;
+    }
+
+    /**
+     * Returns the number of counters (m).
+     *
+     * @return the number of counters
+     */
+    public int getCounterCount()
+    {
+        return counters.length;
+    }
+
+    /**
+     * Returns the number of counters of every element (k).
+     *
+     * @return the number of hashes
+     */
+    public int getHashCount()
+    {
+        return hashes;
+    }
+
+    /**
+     * Maps a combined hash to a counter.
+     *
+     * @param hash - the hash
+     * @return the index of the counter
+     */
+    private int index(int hash)
+    {
+        return (int) ((hash & 0xFFFFFFFFL) % counters.length);
+    }
+
+    /**
+     * Spreads the bits of a hash code, so hash codes that differ in few bits choose unrelated counters.
+     *
+     * @param h - the hash code
+     * @return the mixed hash
+     */
+    private static int mix(int h)
+    {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
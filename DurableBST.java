@@ -0,0 +1,494 @@
+package project6;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * A durability layer around a BST. Every successful add and remove is appended to a write-ahead log in a directory,
+ * the tree is periodically checkpointed to a snapshot file in that directory, and opening the directory again
+ * loads the latest snapshot and replays the log on top of it so the tree survives a crash without a rebuild.
+ *
+ * Log records are collected in memory and written as a group. The SyncPolicy decides how often the log is forced to disk:
+ *   ALWAYS - every record is written and forced before the mutation returns
+ *   BATCH - records are written and forced together once batchSize of them are waiting (or on sync, checkpoint and close)
+ *   NONE - records are written in batches but only forced by checkpoint and close, the operating system flushes the rest
+ * Records that were not yet forced can be lost by a crash, the tree that is recovered is then the tree as of the last
+ * forced record. A record that was only partly written is detected by its checksum and cut off during recovery.
+ *
+ * Replaying the log is idempotent for a set, so a crash between writing a snapshot and truncating the log is harmless.
+ * The snapshot uses the MappedBST file format.
+ *
+ * @author reemaamhaz
+ */
+public class DurableBST<E extends Comparable<E>> implements Closeable
+{
+    /**
+     * How often the write-ahead log is forced to disk.
+     */
+    public enum SyncPolicy { ALWAYS, BATCH, NONE }
+
+    private static final byte ADD = 1; // log record for a successful add
+    private static final byte REMOVE = 2; // log record for a successful remove
+    private static final int RECORD_OVERHEAD = 9; // op byte, length int and checksum int
+
+    private final BST<E> tree; // the in-memory tree
+    private final KeyCodec<E> codec; // encodes the elements for the log and the snapshot
+    private final Path snapshotFile; // the latest checkpoint
+    private final SyncPolicy policy; // how often the log is forced
+    private final int batchSize; // the number of records in one group commit
+    private final int checkpointInterval; // mutations between automatic checkpoints, 0 to only checkpoint on request
+
+    private final FileChannel log; // the log opened for appending
+    private final CRC32 crc = new CRC32(); // checksums the records
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024); // records waiting for the group commit
+    private int pendingRecords = 0; // the number of records in pending
+    private int sinceCheckpoint = 0; // mutations logged since the last checkpoint
+    private Exception checkpointFailure = null; // why the last automatic checkpoint failed, null once one succeeds
+
+    /**
+     * Constructs a durable tree over a tree that has already been recovered by open.
+     *
+     * @param tree - the recovered tree
+     * @param log - the log opened for appending
+     * @param directory - the directory holding the snapshot and the log
+     * @param codec - encodes the elements
+     * @param policy - how often the log is forced
+     * @param batchSize - the number of records in one group commit
+     * @param checkpointInterval - mutations between automatic checkpoints
+     */
+    private DurableBST(BST<E> tree, FileChannel log, Path directory, KeyCodec<E> codec, SyncPolicy policy,
+            int batchSize, int checkpointInterval)
+    {
+        this.tree = tree;
+        this.log = log;
+        this.snapshotFile = directory.resolve("snapshot");
+        this.codec = codec;
+        this.policy = policy;
+        this.batchSize = batchSize;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Opens the durable tree stored in a directory, creating the directory if it does not exist.
+     * The latest snapshot is loaded and the log is replayed on top of it.
+     *
+     * @param directory - the directory holding the snapshot and the log
+     * @param codec - encodes the elements
+     * @param policy - how often the log is forced
+     * @param batchSize - the number of records in one group commit
+     * @param checkpointInterval - mutations between automatic checkpoints, 0 to only checkpoint on request
+     * @return the recovered tree
+     * @throws IOException if the directory cannot be read or written
+     * @throws IllegalArgumentException if batchSize is less than 1 or checkpointInterval is negative
+     */
+    public static <E extends Comparable<E>> DurableBST<E> open(Path directory, KeyCodec<E> codec, SyncPolicy policy,
+            int batchSize, int checkpointInterval) throws IOException
+    {
+        if (directory == null || codec == null || policy == null) throw new NullPointerException("No null parameters");
+        if (batchSize < 1) throw new IllegalArgumentException("The batch size must be at least 1.");
+        if (checkpointInterval < 0) throw new IllegalArgumentException("The checkpoint interval cannot be negative.");
+
+        Files.createDirectories(directory);
+        Path snapshot = directory.resolve("snapshot");
+        Path wal = directory.resolve("wal");
+
+        BST<E> tree = new BST<E>();
+        if (Files.exists(snapshot))
+        {
+            try (MappedBST<E> stored = MappedBST.open(snapshot, codec))
+            {
+                load(tree, stored, 0, stored.size() - 1);
+            }
+        }
+
+        FileChannel log = FileChannel.open(wal, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            long valid = replay(tree, log, codec);
+            log.truncate(valid); // drops a record that was cut off by a crash
+            log.position(valid);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log.close();
+            throw e;
+        }
+        return new DurableBST<E>(tree, log, directory, codec, policy, batchSize, checkpointInterval);
+    }
+
+    /**
+     * Adds the stored elements to the tree middle first so that the loaded tree is balanced instead of
+     * degenerating into a list like it would if the sorted elements were added in order.
+     *
+     * @param tree - the tree being loaded
+     * @param stored - the snapshot
+     * @param low - the first index of the range to load
+     * @param high - the last index of the range to load
+     */
+    private static <E extends Comparable<E>> void load(BST<E> tree, MappedBST<E> stored, int low, int high)
+    {
+        if (low > high) return;
+        int mid = (low + high) >>> 1;
+        tree.add(stored.get(mid));
+        load(tree, stored, low, mid - 1);
+        load(tree, stored, mid + 1, high);
+    }
+
+    /**
+     * Applies the records of the log to the tree in order and stops at the first record that is incomplete
+     * or does not match its checksum.
+     *
+     * @param tree - the tree the records are applied to
+     * @param log - the log
+     * @param codec - decodes the elements
+     * @return the length of the part of the log that was valid
+     * @throws IOException if the log cannot be read
+     */
+    private static <E extends Comparable<E>> long replay(BST<E> tree, FileChannel log, KeyCodec<E> codec) throws IOException
+    {
+        long length = log.size();
+        if (length == 0) return 0;
+        if (length > Integer.MAX_VALUE) throw new IOException("The log is too large to be replayed.");
+
+        MappedByteBuffer data = log.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        CRC32 check = new CRC32();
+        int position = 0;
+        while (position + RECORD_OVERHEAD <= length)
+        {
+            byte op = data.get(position);
+            int keyLength = data.getInt(position + 1);
+            if (keyLength < 0 || position + RECORD_OVERHEAD + (long) keyLength > length) break;
+
+            byte[] key = new byte[keyLength];
+            ByteBuffer view = data.duplicate();
+            view.position(position + 5);
+            view.get(key);
+            check.reset();
+            check.update(op);
+            check.update(key);
+            if ((int) check.getValue() != data.getInt(position + 5 + keyLength)) break;
+
+            E e = codec.decode(data, position + 5, keyLength);
+            if (op == ADD)
+            {
+                tree.add(e);
+            }
+            else if (op == REMOVE)
+            {
+                tree.remove(e);
+            }
+            else
+            {
+                break;
+            }
+            position += RECORD_OVERHEAD + keyLength;
+        }
+        return position;
+    }
+
+    /**
+     * Adds the specified element to the tree if it is not already present and logs the change. If the record
+     * cannot be logged the element is taken out of the tree again, so the tree never holds a change the log lost.
+     * A failing automatic checkpoint does not fail the add, see getCheckpointFailure.
+     *
+     * @param data - the element to be added
+     * @return boolean whether or not the element was added
+     * @throws IOException if the log cannot be written
+     */
+    public boolean add(E data) throws IOException
+    {
+        byte[] key = codec.encode(data); // encoded first so a key the codec rejects leaves the tree unchanged
+        if (!tree.add(data)) return false;
+        try
+        {
+            append(ADD, key);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            tree.remove(data);
+            throw e;
+        }
+        checkpointIfDue();
+        return true;
+    }
+
+    /**
+     * Removes the specified element from the tree if it is present and logs the change. If the record cannot be
+     * logged the element is put back into the tree. A failing automatic checkpoint does not fail the remove, see
+     * getCheckpointFailure.
+     *
+     * @param o - object to be removed from the tree if present
+     * @return true if the tree contained the specified element
+     * @throws IOException if the log cannot be written
+     */
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) throws IOException
+    {
+        E data = (E) o;
+        byte[] key = codec.encode(data);
+        if (!tree.remove(data)) return false;
+        try
+        {
+            append(REMOVE, key);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            tree.add(data);
+            throw e;
+        }
+        checkpointIfDue();
+        return true;
+    }
+
+    /**
+     * This method returns true if the tree contains the specified element.
+     *
+     * @param o - the object we are trying to find
+     * @return true or false if the tree contains element
+     */
+    public boolean contains(Object o)
+    {
+        return tree.contains(o);
+    }
+
+    /**
+     * Returns the number of elements in the tree.
+     *
+     * @return the number of elements
+     */
+    public int size()
+    {
+        return tree.size();
+    }
+
+    /**
+     * Returns the in-memory tree for queries. Changes made directly to it are not logged.
+     *
+     * @return the tree
+     */
+    public BST<E> getTree()
+    {
+        return tree;
+    }
+
+    /**
+     * Adds a record to the group commit and commits the group when the policy asks for it. If the commit fails the
+     * record is taken out of the group again, so the caller can undo its change.
+     *
+     * @param op - ADD or REMOVE
+     * @param key - the encoded element that was added or removed
+     * @throws IOException if the log cannot be written
+     */
+    private void append(byte op, byte[] key) throws IOException
+    {
+        if (pending.remaining() < RECORD_OVERHEAD + key.length)
+        {
+            commit();
+            if (pending.capacity() < RECORD_OVERHEAD + key.length)
+            {
+                pending = ByteBuffer.allocate(RECORD_OVERHEAD + key.length);
+            }
+        }
+        int start = pending.position();
+        crc.reset();
+        crc.update(op);
+        crc.update(key);
+        pending.put(op);
+        pending.putInt(key.length);
+        pending.put(key);
+        pending.putInt((int) crc.getValue());
+        pendingRecords++;
+
+        if (policy == SyncPolicy.ALWAYS || pendingRecords >= batchSize)
+        {
+            try
+            {
+                commit();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                pending.position(start);
+                pendingRecords--;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Checkpoints the tree once checkpointInterval mutations were logged since the last checkpoint. The mutation
+     * that triggers it is already in the log, so a failed checkpoint is not thrown at its caller: the failure is
+     * kept for getCheckpointFailure and the count stays at the interval, so the next mutation tries again.
+     */
+    private void checkpointIfDue()
+    {
+        if (checkpointInterval == 0) return;
+        if (sinceCheckpoint < checkpointInterval) sinceCheckpoint++;
+        if (sinceCheckpoint < checkpointInterval) return;
+        try
+        {
+            checkpoint();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            checkpointFailure = e;
+        }
+    }
+
+    /**
+     * Returns why the last automatic checkpoint failed. The log still holds every change since the last checkpoint
+     * that succeeded, so nothing is lost, but the log keeps growing until a checkpoint succeeds.
+     *
+     * @return the failure, or null if no automatic checkpoint failed since the last one that succeeded
+     */
+    public Exception getCheckpointFailure()
+    {
+        return checkpointFailure;
+    }
+
+    /**
+     * Writes the waiting records to the log and forces them to disk unless the policy is NONE. If the write or the
+     * force fails the log is cut back to where the group started and the records stay waiting.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    private void commit() throws IOException
+    {
+        if (pendingRecords == 0) return;
+        long start = log.position();
+        pending.flip();
+        try
+        {
+            while (pending.hasRemaining())
+            {
+                log.write(pending);
+            }
+            if (policy != SyncPolicy.NONE)
+            {
+                log.force(false);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            pending.position(pending.limit()); // back to collecting records, nothing is dropped
+            pending.limit(pending.capacity());
+            try
+            {
+                log.truncate(start);
+                log.position(start);
+            }
+            catch (IOException suppressed)
+            {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        pending.clear();
+        pendingRecords = 0;
+    }
+
+    /**
+     * Writes and forces every record that is still waiting, whatever the policy is.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void sync() throws IOException
+    {
+        commit();
+        log.force(false);
+    }
+
+    /**
+     * Writes the whole tree to a new snapshot, replaces the old snapshot with it and empties the log. The directory
+     * is forced after the rename, otherwise a crash could keep the old snapshot while the log was already emptied.
+     *
+     * @throws IOException if the snapshot or the log cannot be written
+     */
+    public void checkpoint() throws IOException
+    {
+        sync();
+        Path temp = snapshotFile.resolveSibling("snapshot.tmp");
+        MappedBST.write(tree, temp, codec);
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel directory = FileChannel.open(snapshotFile.getParent(), StandardOpenOption.READ))
+        {
+            directory.force(true); // the rename must be on disk before the log it replaces is emptied
+        }
+        log.truncate(0);
+        log.position(0);
+        log.force(true);
+        sinceCheckpoint = 0;
+        checkpointFailure = null;
+    }
+
+    /**
+     * Forces the waiting records to disk and closes the log.
+     *
+     * @throws IOException if the log cannot be written or closed
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            sync();
+        }
+        finally
+        {
+            log.close();
+        }
+    }
+
+    /**
+     * Measures the add throughput of every SyncPolicy from the command line. Each policy gets a fresh subdirectory
+     * of the given directory and adds the same shuffled Integer keys, timed up to and including close so the
+     * records a policy leaves unforced are paid for.
+     *
+     * @param args - directory [operations] [batchSize]
+     * @throws IOException if the directory cannot be written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: java project6.DurableBST directory [operations] [batchSize]");
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+        int batchSize = (args.length > 2) ? Integer.parseInt(args[2]) : 64;
+
+        Integer[] keys = new Integer[operations];
+        for (int i = 0; i < operations; i++)
+        {
+            keys[i] = i;
+        }
+        Collections.shuffle(Arrays.asList(keys), new Random(42));
+
+        System.out.printf("%-8s %12s %14s%n", "policy", "ms", "adds/s");
+        for (SyncPolicy policy : SyncPolicy.values())
+        {
+            Path run = Files.createTempDirectory(Files.createDirectories(directory), policy.name().toLowerCase());
+            long start = System.nanoTime();
+            try (DurableBST<Integer> tree = open(run, KeyCodec.INTEGER, policy, batchSize, 0))
+            {
+                for (Integer key : keys)
+                {
+                    tree.add(key);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%-8s %12.1f %14.0f%n", policy, elapsed / 1e6, operations / (elapsed / 1e9));
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package project6;
+
+import java.util.Iterator;
+
+/**
+ * A set of closed intervals ordered by their start (and then their end), kept in a red-black BST whose augmentation
+ * keeps the largest end of any interval in every subtree. A query can then skip every subtree whose largest end is
+ * before the query and everything to the right of an interval that starts after the query, so only the paths leading
+ * to matches are visited. Intervals are usually added in order of their start, which would turn an unbalanced tree
+ * into a list, so the tree is balanced and stays O(log N) high.
+ *
+ * @author reemaamhaz
+ */
+public class IntervalTree<T extends Comparable<T>> implements Iterable<IntervalTree.Interval<T>>
+{
+    private final BST<Interval<T>> tree = new BST<Interval<T>>(BST.Balancing.RED_BLACK, maxEnd()); // the intervals
+
+    /**
+     * A closed interval from start to end. Intervals are ordered by their start and then by their end.
+     */
+    public static class Interval<T extends Comparable<T>> implements Comparable<Interval<T>>
+    {
+        private final T start; // the first point of the interval
+        private final T end; // the last point of the interval
+
+        /**
+         * Constructs an interval covering the points from start to end.
+         *
+         * @param start - the first point
+         * @param end - the last point
+         * @throws IllegalArgumentException if start is bigger than end
+         */
+        public Interval(T start, T end)
+        {
+            if (start == null || end == null) throw new NullPointerException("No null bounds.");
+            if (start.compareTo(end) > 0) throw new IllegalArgumentException("The start cannot be bigger than the end");
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return the first point of the interval
+         */
+        public T getStart()
+        {
+            return start;
+        }
+
+        /**
+         * @return the last point of the interval
+         */
+        public T getEnd()
+        {
+            return end;
+        }
+
+        /**
+         * Returns whether this interval shares at least one point with the range from lo to hi.
+         *
+         * @param lo - the first point of the range
+         * @param hi - the last point of the range
+         * @return true if the two overlap
+         */
+        public boolean overlaps(T lo, T hi)
+        {
+            return start.compareTo(hi) <= 0 && end.compareTo(lo) >= 0;
+        }
+
+        /**
+         * Compares the start of the intervals and then their end.
+         *
+         * @param o - the other interval
+         * @return a negative number, zero or a positive number as this interval is before, equal to or after the other
+         */
+        public int compareTo(Interval<T> o)
+        {
+            int comp = start.compareTo(o.start);
+            return comp != 0 ? comp : end.compareTo(o.end);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof Interval)) return false;
+            Interval<?> other = (Interval<?>) o;
+            return start.equals(other.start) && end.equals(other.end);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * start.hashCode() + end.hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[" + start + ", " + end + "]";
+        }
+    }
+
+    /**
+     * Keeps the largest end of the intervals, null when there are none.
+     *
+     * @return an augmentation that keeps the largest end
+     */
+    private static <T extends Comparable<T>> Augmentation<Interval<T>, T> maxEnd()
+    {
+        return new Augmentation<Interval<T>, T>()
+        {
+            public T identity() { return null; }
+            public T lift(Interval<T> interval) { return interval.end; }
+            public T combine(T left, T right) { return (left == null || (right != null && right.compareTo(left) > 0)) ? right : left; }
+        };
+    }
+
+    /**
+     * Returns the number of intervals in this tree.
+     *
+     * @return the number of intervals
+     */
+    public int size()
+    {
+        return tree.size();
+    }
+
+    /**
+     * This method returns true if this tree contains no intervals.
+     *
+     * @return boolean true or false if the tree does not have any intervals
+     */
+    public boolean isEmpty()
+    {
+        return tree.size() == 0;
+    }
+
+    /**
+     * Returns the height of this tree. The height of a leaf is 1.
+     *
+     * @return the height of the tree or 0 if empty
+     */
+    public int height()
+    {
+        return tree.height();
+    }
+
+    /**
+     * Removes all intervals from the tree.
+     */
+    public void clear()
+    {
+        tree.clear();
+    }
+
+    /**
+     * Adds the interval from start to end if it is not already present.
+     *
+     * @param start - the first point of the interval
+     * @param end - the last point of the interval
+     * @return boolean whether or not the interval was added
+     */
+    public boolean add(T start, T end)
+    {
+        return add(new Interval<T>(start, end));
+    }
+
+    /**
+     * Adds the interval if it is not already present.
+     *
+     * @param interval - the interval to be added
+     * @return boolean whether or not the interval was added
+     */
+    public boolean add(Interval<T> interval)
+    {
+        if (interval == null) throw new NullPointerException("No null data.");
+        return tree.add(interval);
+    }
+
+    /**
+     * Removes the interval if it is present.
+     *
+     * @param interval - the interval to be removed
+     * @return true if the tree contained the interval
+     */
+    public boolean remove(Interval<T> interval)
+    {
+        if (interval == null) throw new NullPointerException("No null objects.");
+        return tree.remove(interval);
+    }
+
+    /**
+     * This method returns true if this tree contains the interval.
+     *
+     * @param interval - the interval we are trying to find
+     * @return true or false if the tree contains the interval
+     */
+    public boolean contains(Interval<T> interval)
+    {
+        if (interval == null) throw new NullPointerException("No null objects");
+        return tree.contains(interval);
+    }
+
+    /**
+     * Returns the interval at the specified position in this tree (that uses 0 based indexing).
+     *
+     * @param i - index of the interval to be returned
+     * @return the interval at the index
+     * @throws IndexOutOfBoundsException if the index is negative or not less than size
+     */
+    public Interval<T> get(int i)
+    {
+        if (i < 0 || i >= tree.size()) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + tree.size());
+        return tree.get(i);
+    }
+
+    /**
+     * Returns the intervals that share at least one point with the range from lo to hi, in order of their start.
+     * The intervals are found one at a time as the iterator advances.
+     *
+     * @param lo - the first point of the range
+     * @param hi - the last point of the range
+     * @return an iterator over the overlapping intervals
+     * @throws IllegalArgumentException if lo is bigger than hi
+     */
+    public Iterator<Interval<T>> overlapping(T lo, T hi)
+    {
+        if (lo == null || hi == null) throw new NullPointerException("No null parameters");
+        if (lo.compareTo(hi) > 0) throw new IllegalArgumentException("The start element cannot be bigger than end element");
+        return tree.<T>search(end -> end != null && end.compareTo(lo) >= 0, interval -> interval.start.compareTo(hi) > 0);
+    }
+
+    /**
+     * Returns the intervals that contain the point, in order of their start.
+     *
+     * @param point - the point
+     * @return an iterator over the intervals containing the point
+     */
+    public Iterator<Interval<T>> stabbing(T point)
+    {
+        return overlapping(point, point);
+    }
+
+    /**
+     * This method returns an iterator over all of the intervals in order of their start.
+     *
+     * @return an iterator
+     */
+    public Iterator<Interval<T>> iterator()
+    {
+        return tree.iterator();
+    }
+
+    /**
+     * Returns a string representation of this tree, the intervals in order between brackets and separated by commas.
+     */
+    @Override
+    public String toString()
+    {
+        return tree.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package project6;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts the elements of a tree to and from bytes so that the tree can be written to and read back from a file.
+ * The codec only has to round-trip a single element, it does not need to preserve the ordering of the elements
+ * because the readers always compare decoded elements with their natural ordering.
+ *
+ * @author reemaamhaz
+ */
+public interface KeyCodec<E>
+{
+    /**
+     * Encodes an element into bytes.
+     *
+     * @param key - the element to be encoded
+     * @return the bytes of the element
+     */
+    byte[] encode(E key);
+
+    /**
+     * Decodes an element from the given region of a buffer. The position and limit of the buffer are not changed
+     * so the same buffer can be shared by several readers.
+     *
+     * @param buffer - the buffer that holds the encoded element
+     * @param offset - the absolute index of the first byte of the element
+     * @param length - the number of bytes of the element
+     * @return the decoded element
+     */
+    E decode(ByteBuffer buffer, int offset, int length);
+
+    /**
+     * Codec for strings that stores them as UTF-8.
+     */
+    KeyCodec<String> STRING = new KeyCodec<String>()
+    {
+        public byte[] encode(String key)
+        {
+            return key.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public String decode(ByteBuffer buffer, int offset, int length)
+        {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate(); // a view so the shared buffer's position is left alone
+            view.position(offset);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Codec for integers that stores them as 4 big-endian bytes.
+     */
+    KeyCodec<Integer> INTEGER = new KeyCodec<Integer>()
+    {
+        public byte[] encode(Integer key)
+        {
+            return ByteBuffer.allocate(4).putInt(key).array();
+        }
+
+        public Integer decode(ByteBuffer buffer, int offset, int length)
+        {
+            return buffer.getInt(offset);
+        }
+    };
+
+    /**
+     * Codec for longs that stores them as 8 big-endian bytes.
+     */
+    KeyCodec<Long> LONG = new KeyCodec<Long>()
+    {
+        public byte[] encode(Long key)
+        {
+            return ByteBuffer.allocate(8).putLong(key).array();
+        }
+
+        public Long decode(ByteBuffer buffer, int offset, int length)
+        {
+            return buffer.getLong(offset);
+        }
+    };
+}
@@ -0,0 +1,95 @@
+package project6;
+
+/**
+ * Maps an element to a 64 bit prefix of its key that a BST compares, as unsigned numbers, before it calls compareTo.
+ * The prefix must keep the order of the elements: when a is less than b by compareTo, prefix(a) must not be greater
+ * than prefix(b). Elements with different prefixes are then ordered by their prefixes alone, and only elements with
+ * the same prefix need compareTo. Each node keeps the prefix of its element, so the prefix of the element being
+ * searched for is computed once per operation and most steps down the tree cost one comparison of two longs.
+ *
+ * @author reemaamhaz
+ */
+public interface KeyPrefix<E>
+{
+    /**
+     * Returns the prefix of an element.
+     *
+     * @param element - the element
+     * @return the prefix, compared as an unsigned number
+     */
+    long prefix(E element);
+
+    /**
+     * Packs the first 9 chars of a string into a long, 7 bits each with the first char highest. A shorter string is
+     * padded with 0, and a char above 127 is packed as 127 with 0 after it, so the prefix keeps the order of
+     * String.compareTo for all strings and tells apart most strings made of ASCII.
+     *
+     * @return the prefix of strings
+     */
+    static KeyPrefix<String> strings()
+    {
+        return strings("");
+    }
+
+    /**
+     * Packs the 9 chars of a string that follow a start most keys share, such as the scheme and host of URLs, the
+     * same way as strings(). Keys that all begin with the same 9 chars get the same prefix from strings(), this one
+     * tells them apart by the part where they differ. A string that does not begin with the common start is less or
+     * greater than every string that does, so it gets the smallest or the largest prefix and the order is kept for
+     * all strings; keys like that only cost a compareTo whenever they meet each other.
+     *
+     * @param common - the start most keys share, see commonPrefix
+     * @return the prefix of strings
+     * @throws NullPointerException if common is null
+     */
+    static KeyPrefix<String> strings(String common)
+    {
+        if (common == null) throw new NullPointerException("No null prefix.");
+        int skip = common.length();
+        return s ->
+        {
+            if (!s.startsWith(common)) return (s.compareTo(common) < 0) ? 0 : -1L; // -1 is the largest when unsigned
+            int n = Math.min(9, s.length() - skip);
+            long prefix = 0;
+            for (int i = 0; i < n; i++)
+            {
+                char c = s.charAt(skip + i);
+                if (c >= 127)
+                {
+                    return prefix | (127L << (56 - 7 * i)); // the rest is left to compareTo
+                }
+                prefix |= (long) c << (56 - 7 * i);
+            }
+            return prefix;
+        };
+    }
+
+    /**
+     * Returns the longest start that all the strings share, to be passed to strings(common). The keys of a tree
+     * can be passed as the tree itself.
+     *
+     * @param keys - the strings
+     * @return the longest common start, empty if there are no strings
+     */
+    static String commonPrefix(Iterable<String> keys)
+    {
+        String common = null;
+        for (String key : keys)
+        {
+            if (common == null)
+            {
+                common = key;
+                continue;
+            }
+            int n = Math.min(common.length(), key.length());
+            int i = 0;
+            while (i < n && common.charAt(i) == key.charAt(i))
+            {
+                i++;
+            }
+            common = common.substring(0, i);
+            if (common.isEmpty()) break;
+        }
+        return (common == null) ? "" : common;
+    }
+}
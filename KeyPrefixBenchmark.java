@@ -0,0 +1,143 @@
+package project6;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Measures what key prefixes save on a tree of long string keys that share their start, like the URLs of one site.
+ * The same keys are added to, looked up in and searched with ceiling on a tree without a KeyPrefix, with
+ * KeyPrefix.strings() and with KeyPrefix.strings(common) for the start all the keys share. The keys are built before
+ * the clock starts and every line is the best of a few rounds on a fresh tree, after a warm-up round.
+ *
+ * Two sets of URLs are measured: the pages of one section, whose keys differ right after the common start, and the
+ * pages of four sections, whose keys only differ after the section name and a shared path segment. The 9 chars a
+ * prefix holds tell the first set apart but mostly not the second, which is where compareTo still does the work.
+ *
+ * Usage: java project6.KeyPrefixBenchmark [keys] [rounds] [balancing]
+ *
+ * @author reemaamhaz
+ */
+public class KeyPrefixBenchmark
+{
+    private static final String SITE = "https://www.example.com/"; // the start every key shares
+    private static final String[] SECTIONS = { "catalog/", "products/", "blog/posts/", "support/articles/" };
+
+    /**
+     * Builds URL keys of one site.
+     *
+     * @param n - the number of keys
+     * @param sections - 1 for product pages under one path that differ by id, more for pages of that many sections
+     *                   under a few category segments
+     * @param random - the source of the paths
+     * @return the keys, possibly with duplicates
+     */
+    private static String[] urls(int n, int sections, Random random)
+    {
+        String[] keys = new String[n];
+        StringBuilder url = new StringBuilder();
+        for (int i = 0; i < n; i++)
+        {
+            url.setLength(0);
+            if (sections == 1)
+            {
+                url.append(SITE).append("products/").append(1000000 + random.nextInt(9000000)).append("/reviews?page=")
+                        .append(random.nextInt(20));
+            }
+            else
+            {
+                url.append(SITE).append(SECTIONS[random.nextInt(sections)]);
+                for (int segment = random.nextInt(3); segment >= 0; segment--)
+                {
+                    url.append("category-").append(random.nextInt(50)).append('/');
+                }
+                url.append("item-").append(random.nextInt(1000000)).append(".html");
+            }
+            keys[i] = url.toString();
+        }
+        return keys;
+    }
+
+    /**
+     * Runs the adds, the lookups and the ceilings once on a fresh tree.
+     *
+     * @param balancing - the balancing mode
+     * @param keyPrefix - the prefix of the keys, null for none
+     * @param keys - the keys to add
+     * @param probes - the keys to look up and to find the ceiling of, half of them not in the tree
+     * @return the nanoseconds it took
+     */
+    private static long run(BST.Balancing balancing, KeyPrefix<String> keyPrefix, String[] keys, String[] probes)
+    {
+        BST<String> tree = new BST<String>(balancing);
+        tree.setKeyPrefix(keyPrefix);
+        int hits = 0;
+        long start = System.nanoTime();
+        for (String key : keys)
+        {
+            tree.add(key);
+        }
+        for (String probe : probes)
+        {
+            if (tree.contains(probe)) hits++;
+        }
+        for (String probe : probes)
+        {
+            if (tree.ceiling(probe) != null) hits++;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (hits < 0) throw new IllegalStateException(); // keeps the calls from being optimised away
+        return elapsed;
+    }
+
+    /**
+     * Runs the benchmark from the command line and prints the time of every kind of prefix.
+     *
+     * @param args - [keys] [rounds] [balancing]
+     */
+    public static void main(String[] args)
+    {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        BST.Balancing balancing = (args.length > 2) ? BST.Balancing.valueOf(args[2].toUpperCase()) : BST.Balancing.RED_BLACK;
+
+        System.out.printf("%s, %d URL keys, %d lookups and %d ceilings, best of %d rounds%n", balancing, n, n, n, rounds);
+        for (int sections : new int[] { 1, SECTIONS.length })
+        {
+            Random random = new Random(42);
+            String[] keys = urls(n, sections, random);
+            String[] probes = new String[n];
+            String[] misses = urls(n / 2, sections, random);
+            for (int i = 0; i < n; i++)
+            {
+                probes[i] = (i % 2 == 0) ? keys[random.nextInt(n)] : misses[i / 2];
+            }
+
+            ArrayList<String> sample = new ArrayList<String>();
+            for (String key : keys)
+            {
+                sample.add(key);
+            }
+            String common = KeyPrefix.commonPrefix(sample);
+
+            String[] names = { "compareTo only", "strings()", "strings(\"" + common + "\")" };
+            ArrayList<KeyPrefix<String>> prefixes = new ArrayList<KeyPrefix<String>>();
+            prefixes.add(null);
+            prefixes.add(KeyPrefix.strings());
+            prefixes.add(KeyPrefix.strings(common));
+
+            System.out.printf("%d section%s, for example %s%n", sections, sections == 1 ? "" : "s", keys[0]);
+            long baseline = 0;
+            for (int p = 0; p < names.length; p++)
+            {
+                run(balancing, prefixes.get(p), keys, probes); // warm-up
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < rounds; r++)
+                {
+                    best = Math.min(best, run(balancing, prefixes.get(p), keys, probes));
+                }
+                if (p == 0) baseline = best;
+                System.out.printf("  %-46s %8.1f ms %6.2fx%n", names[p], best / 1e6, (double) baseline / best);
+            }
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package project6;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only tree that answers queries directly from a file that was written from a BST. The file is memory mapped
+ * so nothing is loaded into the heap when it is opened and the operating system decides which pages stay in memory.
+ * The elements are stored in ascending order with a table of offsets in front of them, which makes the file an
+ * implicit, perfectly balanced binary search tree: the middle element of every range is the root of that range.
+ * Every search is a binary search over the offset table that decodes one element per level, so the lookups are
+ * O(log N) and no Node objects are created.
+ *
+ * File layout (all integers are big-endian):
+ *   int magic, int count, int[count + 1] offsets of the elements relative to the start of the data, element bytes
+ *
+ * A single file is limited to 2GB because it is mapped with one buffer.
+ *
+ * @author reemaamhaz
+ */
+public class MappedBST<E extends Comparable<E>> implements Iterable<E>, Closeable
+{
+    private static final int MAGIC = 0x42535431; // "BST1" marks a file written by this class
+    private static final int HEADER = 8; // magic and count
+
+    private final FileChannel channel; // the open file, closed by close()
+    private final MappedByteBuffer buffer; // the mapped pages of the file
+    private final KeyCodec<E> codec; // decodes the elements stored in the file
+    private final int size; // the number of elements in the file
+    private final int dataStart; // absolute index of the first element byte
+    private final int dataLength; // the number of element bytes
+    private final Path file; // the file, named when a damaged offset is found
+
+    /**
+     * Constructs a tree over a file that has already been mapped and had its header checked by open.
+     *
+     * @param channel - the open file
+     * @param buffer - the mapped file
+     * @param codec - decodes the elements
+     * @param file - the file
+     */
+    private MappedBST(FileChannel channel, MappedByteBuffer buffer, KeyCodec<E> codec, Path file)
+    {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.codec = codec;
+        this.file = file;
+        this.size = buffer.getInt(4);
+        this.dataStart = HEADER + 4 * (size + 1);
+        this.dataLength = buffer.capacity() - dataStart;
+    }
+
+    /**
+     * Writes the elements of a tree to a file in the format read by open. The file is replaced if it exists
+     * and it is forced to disk before this method returns.
+     *
+     * @param tree - the tree to be written
+     * @param file - the file to write to
+     * @param codec - encodes the elements of the tree
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the encoded tree would be larger than 2GB
+     */
+    public static <E extends Comparable<E>> void write(BST<E> tree, Path file, KeyCodec<E> codec) throws IOException
+    {
+        if (tree == null || file == null || codec == null) throw new NullPointerException("No null parameters");
+
+        int count = tree.size();
+        long dataStart = HEADER + 4L * (count + 1);
+        int[] offsets = new int[count + 1];
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            // the elements go after the offset table, the table is filled in once all of them are written
+            out.position(dataStart);
+            ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+            long position = 0;
+            int i = 0;
+            for (E e : tree)
+            {
+                byte[] bytes = codec.encode(e);
+                offsets[i++] = (int) position;
+                position += bytes.length;
+                if (dataStart + position > Integer.MAX_VALUE)
+                {
+                    throw new IllegalArgumentException("The tree is too large to be mapped as a single file.");
+                }
+                if (bytes.length > chunk.remaining())
+                {
+                    drain(out, chunk);
+                }
+                if (bytes.length > chunk.capacity())
+                {
+                    out.write(ByteBuffer.wrap(bytes)); // too big for the chunk so it is written on its own
+                }
+                else
+                {
+                    chunk.put(bytes);
+                }
+            }
+            drain(out, chunk);
+            offsets[count] = (int) position;
+
+            ByteBuffer header = ByteBuffer.allocate((int) dataStart);
+            header.putInt(MAGIC);
+            header.putInt(count);
+            for (int offset : offsets)
+            {
+                header.putInt(offset);
+            }
+            header.flip();
+            out.position(0);
+            while (header.hasRemaining())
+            {
+                out.write(header);
+            }
+            out.force(true);
+        }
+    }
+
+    /**
+     * Writes out whatever has been collected in the chunk and empties it.
+     *
+     * @param out - the file being written
+     * @param chunk - the bytes waiting to be written
+     * @throws IOException if the file cannot be written
+     */
+    private static void drain(FileChannel out, ByteBuffer chunk) throws IOException
+    {
+        chunk.flip();
+        while (chunk.hasRemaining())
+        {
+            out.write(chunk);
+        }
+        chunk.clear();
+    }
+
+    /**
+     * Opens a file written by write and maps it into memory. Opening reads neither the elements nor the offset
+     * table, only the header and the first and last offset, so it takes O(1) however large the file is. That is
+     * enough to report a truncated file here; an offset damaged inside the table is reported by the lookup that
+     * decodes its element.
+     *
+     * @param file - the file to open
+     * @param codec - decodes the elements stored in the file
+     * @return a read-only tree backed by the file
+     * @throws IOException if the file cannot be read or was not written by this class
+     */
+    public static <E extends Comparable<E>> MappedBST<E> open(Path file, KeyCodec<E> codec) throws IOException
+    {
+        if (file == null || codec == null) throw new NullPointerException("No null parameters");
+
+        FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+        try
+        {
+            long length = in.size();
+            if (length > Integer.MAX_VALUE) throw new IOException("File is too large to be mapped: " + file);
+            if (length < HEADER) throw new IOException("Not a tree file: " + file);
+
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            int count = mapped.getInt(4);
+            if (mapped.getInt(0) != MAGIC || count < 0 || HEADER + 4L * (count + 1) > length)
+            {
+                throw new IOException("Not a tree file: " + file);
+            }
+            // the offsets must start at 0 and end exactly at the end of the file, get checks the ones in between
+            long dataLength = length - (HEADER + 4L * (count + 1));
+            if (mapped.getInt(HEADER) != 0) throw new IOException("Corrupt offset table at entry 0: " + file);
+            if (mapped.getInt(HEADER + 4 * count) != dataLength) throw new IOException("Truncated tree file: " + file);
+            return new MappedBST<E>(in, mapped, codec, file);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the file. The mapping itself is released by the garbage collector once the tree is unreachable.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Returns the number of elements in this tree.
+     *
+     * @return the number of elements
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * This method returns true if this tree contains no elements.
+     *
+     * @return boolean true or false if the tree does not have any elements
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Returns the element at the specified position in this tree (that uses 0 based indexing). -- performance O(1)
+     *
+     * @param i - index of element to be returned
+     * @return element of index
+     * @throws IndexOutOfBoundsException if the index is negative or not less than size
+     * @throws UncheckedIOException if the offsets of the element are damaged
+     */
+    public E get(int i)
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+
+        int start = buffer.getInt(HEADER + 4 * i);
+        int end = buffer.getInt(HEADER + 4 * (i + 1));
+        // open only checked the first and last offset, so the element must lie inside the data
+        if (start < 0 || end < start || end > dataLength)
+        {
+            throw new UncheckedIOException(new IOException("Corrupt offset table at entry " + i + ": " + file));
+        }
+        return codec.decode(buffer, dataStart + start, end - start);
+    }
+
+    /**
+     * Binary searches the elements for the given data.
+     *
+     * @param data - the value we are looking for
+     * @return the index of the data if it is present, otherwise (-(insertion point) - 1)
+     */
+    private int search(E data)
+    {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int comp = data.compareTo(get(mid));
+            if (comp > 0)
+            {
+                low = mid + 1;
+            }
+            else if (comp < 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * This method returns true if this tree contains the specified element. -- performance O(log N)
+     *
+     * @param o - the object we are trying to find
+     * @return true or false if the tree contains element
+     * @throws ClassCastException - if the specified object cannot be compared with the elements in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o)
+    {
+        if (o == null) throw new NullPointerException("No null objects");
+        return search((E) o) >= 0;
+    }
+
+    /**
+     * Returns the least element in this tree greater than or equal to the given element, or null if there is no such element.
+     *
+     * @param data - the element data we're trying to find the ceiling of
+     * @return the data of the ceiling element
+     */
+    public E ceiling(E data)
+    {
+        if (data == null) throw new NullPointerException("Cannot find ceiling of null.");
+        int i = search(data);
+        return elementAt(i >= 0 ? i : -(i + 1));
+    }
+
+    /**
+     * Returns the greatest element in this tree less than or equal to the given element, or null if there is no such element.
+     *
+     * @param data - the element data we're trying to find the floor of
+     * @return the data of the floor element
+     */
+    public E floor(E data)
+    {
+        if (data == null) throw new NullPointerException("Cannot find floor of null.");
+        int i = search(data);
+        return elementAt(i >= 0 ? i : -(i + 1) - 1);
+    }
+
+    /**
+     * Returns the least element in this tree strictly greater than the given element, or null if there is no such element.
+     *
+     * @param data - the value to find the higher value of
+     * @return least element strictly greater than the given data or null
+     */
+    public E higher(E data)
+    {
+        if (data == null) throw new NullPointerException("No null params.");
+        int i = search(data);
+        return elementAt(i >= 0 ? i + 1 : -(i + 1));
+    }
+
+    /**
+     * Returns the greatest element in this tree strictly less than the given element, or null if there is no such element.
+     *
+     * @param data - the value to find the lower value of
+     * @return the lower value data
+     */
+    public E lower(E data)
+    {
+        if (data == null) throw new NullPointerException("No null params");
+        int i = search(data);
+        return elementAt(i >= 0 ? i - 1 : -(i + 1) - 1);
+    }
+
+    /**
+     * Returns the element at the given index or null when the index falls outside of the tree.
+     *
+     * @param i - the index of the element
+     * @return the element or null
+     */
+    private E elementAt(int i)
+    {
+        return (i < 0 || i >= size) ? null : get(i);
+    }
+
+    /**
+     * Finds the lowest element in the tree
+     *
+     * @return E - lowest element in the tree
+     * @throws NoSuchElementException if the tree is empty
+     */
+    public E first()
+    {
+        if (isEmpty()) throw new NoSuchElementException("Empty tree");
+        return get(0);
+    }
+
+    /**
+     * Finds the largest element in the tree
+     *
+     * @return the largest element or null if the tree is empty
+     */
+    public E last()
+    {
+        return elementAt(size - 1);
+    }
+
+    /**
+     * Returns a collection whose elements range from start, inclusive, to end, inclusive.
+     * This operation is O(log N + M) where M is the number of elements in the returned list.
+     *
+     * @param start - the first element in the list
+     * @param end - the last element in the list
+     * @return an array list of the elements in the range from start to end
+     */
+    public ArrayList<E> getRange(E start, E end)
+    {
+        ArrayList<E> arr = new ArrayList<E>();
+        Iterator<E> it = rangeIterator(start, end);
+        while (it.hasNext())
+        {
+            arr.add(it.next());
+        }
+        return arr;
+    }
+
+    /**
+     * Returns an iterator over the elements from start, inclusive, to end, inclusive that decodes each element
+     * only when it is reached, so a scan only touches the pages it actually reads.
+     *
+     * @param start - the first element of the range
+     * @param end - the last element of the range
+     * @return an iterator over the range in ascending order
+     */
+    public Iterator<E> rangeIterator(E start, E end)
+    {
+        if (start == null) throw new NullPointerException("No null parameters");
+        if (end == null) throw new NullPointerException("No null parameters");
+        if (start.compareTo(end) > 0) throw new IllegalArgumentException("The start element cannot be bigger than end element");
+
+        int from = search(start);
+        int to = search(end);
+        from = from >= 0 ? from : -(from + 1);
+        to = to >= 0 ? to + 1 : -(to + 1);
+        return new Iter(from, to);
+    }
+
+    /**
+     * This method returns an iterator over the elements in ascending order.
+     *
+     * @return an iterator
+     */
+    public Iterator<E> iterator()
+    {
+        return new Iter(0, size);
+    }
+
+    /**
+     * Iterates over a run of indexes decoding one element per call to next.
+     */
+    private class Iter implements Iterator<E>
+    {
+        private int index; // the index of the next element
+        private final int end; // one past the last index
+
+        /**
+         * Constructor that instantiates an iterator over the indexes from start to end.
+         *
+         * @param start - the first index, inclusive
+         * @param end - the last index, exclusive
+         */
+        Iter(int start, int end)
+        {
+            this.index = start;
+            this.end = end;
+        }
+
+        /**
+         * This method returns whether there is another element
+         *
+         * @return boolean true/false if there is another element
+         */
+        public boolean hasNext()
+        {
+            return index < end;
+        }
+
+        /**
+         * This method returns the next element
+         *
+         * @throws NoSuchElementException if there is not another element
+         * @return the next element
+         */
+        public E next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException("Next node does not exist.");
+            }
+            return get(index++);
+        }
+    }
+}
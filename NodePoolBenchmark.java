@@ -0,0 +1,126 @@
+package project6;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Measures how much a tree allocates under add/remove churn with and without a node pool. A tree is filled and then
+ * every step removes one of its keys and adds one that is not in it, so the size stays the same and every step
+ * unlinks one node and links another. The keys are boxed before the clock starts, so what is left is what the tree
+ * allocates itself. Bytes are counted per thread through com.sun.management.ThreadMXBean where the JVM offers it.
+ *
+ * Usage: java project6.NodePoolBenchmark [size] [steps]
+ *
+ * @author reemaamhaz
+ */
+public class NodePoolBenchmark
+{
+    /**
+     * Runs the churn on one tree and prints a line for it.
+     *
+     * @param balancing - the balancing mode
+     * @param poolCapacity - the node pool capacity, 0 for no pool
+     * @param keys - the keys, the first size of them are added before the churn
+     * @param size - the number of elements the tree holds
+     * @param victims - for every step the index into keys of the key to remove
+     * @param threads - counts the allocated bytes, null if the JVM cannot
+     */
+    private static void churn(BST.Balancing balancing, int poolCapacity, Integer[] keys, int size, int[] victims,
+            com.sun.management.ThreadMXBean threads)
+    {
+        BST<Integer> tree = new BST<Integer>(balancing);
+        tree.setNodePoolCapacity(poolCapacity);
+        for (int i = 0; i < size; i++)
+        {
+            tree.add(keys[i]);
+        }
+        int spare = size; // keys[spare] is not in the tree, every step swaps it with the victim
+        for (int round = 0; round < 2; round++) // the first round warms up the JIT and the pool
+        {
+            long collections = collections();
+            long bytes = (threads == null) ? 0 : threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int victim : victims)
+            {
+                tree.remove(keys[victim]);
+                tree.add(keys[spare]);
+                Integer swap = keys[victim];
+                keys[victim] = keys[spare];
+                keys[spare] = swap;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (round == 0) continue;
+
+            long allocated = (threads == null) ? -1 : threads.getCurrentThreadAllocatedBytes() - bytes;
+            System.out.printf("%-10s %6d %12.2f %14s %6d%n", balancing, poolCapacity,
+                    2 * victims.length / (elapsed / 1e3),
+                    allocated < 0 ? "n/a" : String.format("%.2f", (double) allocated / (2 * victims.length)),
+                    collections() - collections);
+        }
+    }
+
+    /**
+     * Returns the number of garbage collections so far.
+     *
+     * @return the sum over all collectors
+     */
+    private static long collections()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Runs the churn for every balancing mode with and without a pool and prints the results.
+     *
+     * @param args - [size] [steps]
+     */
+    public static void main(String[] args)
+    {
+        int size = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        int steps = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean threads = null;
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        Random random = new Random(42);
+        int[] victims = new int[steps];
+        for (int i = 0; i < steps; i++)
+        {
+            victims[i] = random.nextInt(size);
+        }
+
+        System.out.printf("%d elements, %d removes and %d adds%n", size, steps, steps);
+        System.out.printf("%-10s %6s %12s %14s %6s%n", "mode", "pool", "Mops/s", "bytes/op", "GCs");
+        for (BST.Balancing balancing : BST.Balancing.values())
+        {
+            for (int pool : new int[] { 0, 1024 })
+            {
+                Integer[] keys = new Integer[size + 1];
+                for (int i = 0; i < keys.length; i++)
+                {
+                    keys[i] = i;
+                }
+                for (int i = keys.length - 1; i > 0; i--)
+                {
+                    int j = random.nextInt(i + 1);
+                    Integer swap = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = swap;
+                }
+                churn(balancing, pool, keys, size, victims, threads);
+            }
+        }
+    }
+}
@@ -0,0 +1,739 @@
+package project6;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A set of elements split by range into shards, each a BST with its own lock, so threads that change different key
+ * ranges do not wait for each other. A shard holds every element from its lower bound up to the lower bound of the
+ * next shard. A shard that grows past maxShardSize is split in two at its median, and a shard that shrinks below a
+ * quarter of maxShardSize is merged with a neighbour when the two fit in one shard.
+ *
+ * The shards are kept in an array that is never changed once it is published: splitting and merging build a new
+ * array and swap it in, so finding a shard takes no lock at all. An operation takes the lock of the shard it found
+ * and checks that the shard was not split or merged away in the meantime, otherwise it looks the shard up again.
+ * The size, get(int) and rank are answered from the sizes of the shards, and the iterators copy a few elements out of
+ * one shard at a time. None of them lock the whole set, so they are weakly consistent while other threads are
+ * changing it: every element that was in the set the whole time is seen exactly once, in ascending order.
+ *
+ * @author reemaamhaz
+ */
+public class ShardedBST<E extends Comparable<E>> implements Iterable<E>
+{
+    private static final int CHUNK = 64; // the elements an iterator copies out of a shard at a time
+
+    /**
+     * This private, static class is one range of the set.
+     */
+    private static class Shard<E extends Comparable<E>>
+    {
+        final E low; // the smallest element the shard may hold, null for the first shard
+        final BST<E> tree; // the elements of the shard
+        final ReentrantLock lock = new ReentrantLock(); // guards the tree
+        volatile int size; // the size of the tree, readable without the lock
+        boolean retired = false; // set under the lock once the shard was split or merged away, guarded by lock
+
+        /**
+         * Constructs a shard.
+         *
+         * @param low - the smallest element the shard may hold, null for the first shard
+         * @param tree - the elements of the shard
+         */
+        Shard(E low, BST<E> tree)
+        {
+            this.low = low;
+            this.tree = tree;
+            this.size = tree.size();
+        }
+    }
+
+    private final BST.Balancing balancing; // how the tree of every shard is balanced
+    private final int maxShardSize; // a shard larger than this is split
+    private final int minShardSize; // a shard smaller than this is merged with a neighbour if they fit in one shard
+    private final ReentrantLock resizing = new ReentrantLock(); // lets one thread at a time split, merge or clear
+    private volatile Shard<E>[] shards; // the shards in ascending order, replaced as a whole and never changed
+
+    /**
+     * Constructs an empty set with one shard that is split as it grows.
+     *
+     * @param balancing - how the tree of every shard is balanced
+     * @param maxShardSize - the number of elements above which a shard is split
+     * @throws IllegalArgumentException if maxShardSize is less than 2
+     */
+    public ShardedBST(BST.Balancing balancing, int maxShardSize)
+    {
+        this(balancing, maxShardSize, new ArrayList<E>());
+    }
+
+    /**
+     * Constructs an empty set that starts with a shard below the first boundary, one between every two boundaries
+     * and one from the last boundary up.
+     *
+     * @param balancing - how the tree of every shard is balanced
+     * @param maxShardSize - the number of elements above which a shard is split
+     * @param boundaries - the lower bounds of the shards after the first, in ascending order
+     * @throws NullPointerException if balancing, boundaries or one of the boundaries is null
+     * @throws IllegalArgumentException if maxShardSize is less than 2 or the boundaries are not ascending
+     */
+    public ShardedBST(BST.Balancing balancing, int maxShardSize, Collection<? extends E> boundaries)
+    {
+        if (balancing == null) throw new NullPointerException("No null balancing.");
+        if (boundaries == null) throw new NullPointerException("No null boundaries.");
+        if (maxShardSize < 2) throw new IllegalArgumentException("A shard must be able to hold at least 2 elements.");
+        this.balancing = balancing;
+        this.maxShardSize = maxShardSize;
+        this.minShardSize = maxShardSize / 4;
+
+        ArrayList<Shard<E>> initial = new ArrayList<Shard<E>>();
+        initial.add(new Shard<E>(null, new BST<E>(balancing)));
+        E previous = null;
+        for (E boundary : boundaries)
+        {
+            if (boundary == null) throw new NullPointerException("No null boundaries.");
+            if (previous != null && previous.compareTo(boundary) >= 0)
+            {
+                throw new IllegalArgumentException("The boundaries must be in ascending order.");
+            }
+            initial.add(new Shard<E>(boundary, new BST<E>(balancing)));
+            previous = boundary;
+        }
+        shards = initial.toArray(newShards(0));
+    }
+
+    /**
+     * Creates an array of shards.
+     *
+     * @param length - the length of the array
+     * @return the array
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Shard<E>[] newShards(int length)
+    {
+        return (Shard<E>[]) new Shard[length];
+    }
+
+    /**
+     * Finds the shard whose range holds the element and locks it. The array is read without a lock, so the shard
+     * may have been split or merged away before its lock was taken; it is then unlocked and the shard is looked up
+     * again in the array that replaced it. A shard that is still in use covers the same range it was found for.
+     *
+     * @param data - the element
+     * @return the locked shard, the caller unlocks it
+     */
+    private Shard<E> lockShard(E data)
+    {
+        while (true)
+        {
+            Shard<E>[] current = shards;
+            Shard<E> shard = current[shardIndex(current, data)];
+            shard.lock.lock();
+            if (!shard.retired) return shard;
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the element to the shard whose range holds it, and splits the shard if it became too large.
+     *
+     * @param data - the element to be added
+     * @return true if the set did not already contain the element
+     * @throws NullPointerException if data is null
+     */
+    public boolean add(E data)
+    {
+        if (data == null) throw new NullPointerException("No null elements.");
+        boolean added;
+        boolean tooLarge;
+        Shard<E> shard = lockShard(data);
+        try
+        {
+            added = shard.tree.add(data);
+            shard.size = shard.tree.size();
+            tooLarge = shard.size > maxShardSize;
+        }
+        finally
+        {
+            shard.lock.unlock();
+        }
+        if (tooLarge)
+        {
+            resize(data); // the shard lock is let go first, resize takes the locks in its own order
+        }
+        return added;
+    }
+
+    /**
+     * Removes the element from the shard whose range holds it, and merges the shard with a neighbour when it just
+     * became too small.
+     *
+     * @param o - the element to be removed
+     * @return true if the set contained the element
+     * @throws NullPointerException if o is null
+     * @throws ClassCastException if o cannot be compared with the elements
+     */
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o)
+    {
+        if (o == null) throw new NullPointerException("No null objects.");
+        E data = (E) o;
+        boolean removed;
+        Shard<E> shard = lockShard(data);
+        try
+        {
+            removed = shard.tree.remove(data);
+            shard.size = shard.tree.size();
+        }
+        finally
+        {
+            shard.lock.unlock();
+        }
+        // resizing is only locked when a neighbour has room, so a shard that cannot merge costs nothing
+        Shard<E>[] current = shards;
+        boolean tooSmall = removed && shard.size < minShardSize && mergePartner(current, shardIndex(current, data)) >= 0;
+        if (tooSmall)
+        {
+            resize(data);
+        }
+        return removed;
+    }
+
+    /**
+     * Returns true if the set contains the element.
+     *
+     * @param o - the element to find
+     * @return true if the set contains the element
+     * @throws NullPointerException if o is null
+     * @throws ClassCastException if o cannot be compared with the elements
+     */
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o)
+    {
+        if (o == null) throw new NullPointerException("No null objects.");
+        E data = (E) o;
+        Shard<E> shard = lockShard(data);
+        try
+        {
+            return shard.tree.contains(data);
+        }
+        finally
+        {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the least element greater than or equal to the given element, looking in the following shards when the
+     * shard of the element has none.
+     *
+     * @param data - the element to find the ceiling of
+     * @return the ceiling or null if there is none
+     * @throws NullPointerException if data is null
+     */
+    public E ceiling(E data)
+    {
+        if (data == null) throw new NullPointerException("Cannot find ceiling of null.");
+        search: while (true)
+        {
+            Shard<E>[] current = shards;
+            for (int i = shardIndex(current, data); i < current.length; i++)
+            {
+                Shard<E> shard = current[i];
+                E ceiling;
+                shard.lock.lock();
+                try
+                {
+                    if (shard.retired) continue search; // the shards changed, start over in the new array
+                    ceiling = shard.tree.isEmpty() ? null : shard.tree.ceiling(data);
+                }
+                finally
+                {
+                    shard.lock.unlock();
+                }
+                if (ceiling != null) return ceiling;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of elements, the sum of the sizes of the shards.
+     *
+     * @return the number of elements
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Shard<E> shard : shards)
+        {
+            size += shard.size;
+        }
+        return size;
+    }
+
+    /**
+     * Returns true if the set has no elements.
+     *
+     * @return true if the set is empty
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of shards the set is split into.
+     *
+     * @return the number of shards
+     */
+    public int shardCount()
+    {
+        return shards.length;
+    }
+
+    /**
+     * Returns the element at the given position in ascending order. The shards before the one holding the position
+     * are skipped by their sizes, only that shard is searched.
+     *
+     * @param i - the 0 based index of the element
+     * @return the element at the index
+     * @throws IndexOutOfBoundsException if the index is negative or not less than the size
+     */
+    public E get(int i)
+    {
+        if (i < 0) throw new IndexOutOfBoundsException("Index: " + i);
+        search: while (true)
+        {
+            int index = i;
+            for (Shard<E> shard : shards)
+            {
+                if (index >= shard.size)
+                {
+                    index -= shard.size;
+                    continue;
+                }
+                shard.lock.lock();
+                try
+                {
+                    if (shard.retired) continue search; // the shards changed, count again in the new array
+                    if (index < shard.tree.size())
+                    {
+                        return shard.tree.get(index);
+                    }
+                    index -= shard.tree.size(); // the shard shrank since its size was read
+                }
+                finally
+                {
+                    shard.lock.unlock();
+                }
+            }
+            throw new IndexOutOfBoundsException("Index: " + i);
+        }
+    }
+
+    /**
+     * Returns the number of elements less than the given element: the sizes of the shards before its shard plus its
+     * rank within its shard.
+     *
+     * @param data - the element to find the rank of
+     * @return the number of smaller elements
+     * @throws NullPointerException if data is null
+     */
+    public int rank(E data)
+    {
+        if (data == null) throw new NullPointerException("No null parameters");
+        while (true)
+        {
+            Shard<E>[] current = shards;
+            int index = shardIndex(current, data);
+            int rank = 0;
+            for (int i = 0; i < index; i++)
+            {
+                rank += current[i].size;
+            }
+            Shard<E> shard = current[index];
+            shard.lock.lock();
+            try
+            {
+                if (!shard.retired) return rank + shard.tree.rank(data);
+            }
+            finally
+            {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator over the elements in ascending order that goes through the shards one after the other.
+     *
+     * @return an iterator over the elements
+     */
+    public Iterator<E> iterator()
+    {
+        return new RangeIter(null, null);
+    }
+
+    /**
+     * Returns an iterator over the elements from start to end, both inclusive, in ascending order.
+     *
+     * @param start - the first element of the range
+     * @param end - the last element of the range
+     * @return an iterator over the elements of the range
+     * @throws NullPointerException if start or end is null
+     * @throws IllegalArgumentException if start is greater than end
+     */
+    public Iterator<E> range(E start, E end)
+    {
+        if (start == null) throw new NullPointerException("No null parameters");
+        if (end == null) throw new NullPointerException("No null parameters");
+        if (start.compareTo(end) > 0) throw new IllegalArgumentException("The start element cannot be bigger than end element");
+        return new RangeIter(start, end);
+    }
+
+    /**
+     * Returns a list of the elements from start to end, both inclusive, in ascending order.
+     *
+     * @param start - the first element of the range
+     * @param end - the last element of the range
+     * @return an array list of the elements in the range
+     * @throws NullPointerException if start or end is null
+     * @throws IllegalArgumentException if start is greater than end
+     */
+    public ArrayList<E> getRange(E start, E end)
+    {
+        ArrayList<E> arr = new ArrayList<E>();
+        for (Iterator<E> it = range(start, end); it.hasNext(); )
+        {
+            arr.add(it.next());
+        }
+        return arr;
+    }
+
+    /**
+     * Removes all elements. The shards are kept, so the ranges stay as they were. The shards are emptied one after
+     * the other, so an element another thread adds to a shard that was already emptied stays in the set.
+     */
+    public void clear()
+    {
+        resizing.lock();
+        try
+        {
+            for (Shard<E> shard : shards)
+            {
+                shard.lock.lock();
+                try
+                {
+                    shard.tree.clear();
+                    shard.size = 0;
+                }
+                finally
+                {
+                    shard.lock.unlock();
+                }
+            }
+        }
+        finally
+        {
+            resizing.unlock();
+        }
+    }
+
+    /**
+     * Returns the elements of every shard, in ascending order.
+     *
+     * @return a string like [a, b, c]
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder str = new StringBuilder("[");
+        for (E e : this)
+        {
+            if (str.length() > 1) str.append(", ");
+            str.append(e);
+        }
+        return str.append(']').toString();
+    }
+
+    /**
+     * Finds the shard whose range holds the element by a binary search over the lower bounds.
+     *
+     * @param shards - the array of shards to search, read once by the caller
+     * @param data - the element
+     * @return the index of the last shard whose lower bound is not greater than the element
+     */
+    private int shardIndex(Shard<E>[] shards, E data)
+    {
+        int low = 1;
+        int high = shards.length - 1;
+        int found = 0; // the first shard has no lower bound
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            if (shards[mid].low.compareTo(data) <= 0)
+            {
+                found = mid;
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Splits or merges the shard holding the element if its size is still out of bounds once resizing is locked.
+     *
+     * @param data - an element in the range of the shard
+     */
+    private void resize(E data)
+    {
+        resizing.lock();
+        try
+        {
+            Shard<E>[] current = shards;
+            int index = shardIndex(current, data);
+            Shard<E> shard = current[index];
+            if (shard.size > maxShardSize)
+            {
+                split(current, index);
+            }
+            else if (shard.size < minShardSize)
+            {
+                int other = mergePartner(current, index);
+                if (other >= 0)
+                {
+                    merge(current, Math.min(index, other));
+                }
+            }
+        }
+        finally
+        {
+            resizing.unlock();
+        }
+    }
+
+    /**
+     * Picks the smaller neighbour of a shard to merge it with.
+     *
+     * @param shards - the array of shards, read once by the caller
+     * @param index - the index of the shard
+     * @return the index of the neighbour, or -1 if there is none or the two would not fit in one shard
+     */
+    private int mergePartner(Shard<E>[] shards, int index)
+    {
+        if (shards.length < 2) return -1;
+        int other;
+        if (index == 0)
+        {
+            other = 1;
+        }
+        else if (index == shards.length - 1)
+        {
+            other = index - 1;
+        }
+        else
+        {
+            other = (shards[index - 1].size <= shards[index + 1].size) ? index - 1 : index + 1;
+        }
+        return (shards[index].size + shards[other].size <= maxShardSize) ? other : -1;
+    }
+
+    /**
+     * Replaces a shard with two shards holding the elements below and from its median. The caller holds resizing,
+     * the shard is locked while its elements are copied and until the new array is published, so every change to
+     * it either ends up in the new shards or waits and finds the new shards.
+     *
+     * @param current - the array of shards
+     * @param index - the index of the shard
+     */
+    private void split(Shard<E>[] current, int index)
+    {
+        Shard<E> shard = current[index];
+        shard.lock.lock();
+        try
+        {
+            ArrayList<E> elements = shard.tree.firstK(shard.tree.size());
+            int half = elements.size() / 2;
+            Shard<E>[] next = newShards(current.length + 1);
+            System.arraycopy(current, 0, next, 0, index);
+            next[index] = new Shard<E>(shard.low, build(elements.subList(0, half)));
+            next[index + 1] = new Shard<E>(elements.get(half), build(elements.subList(half, elements.size())));
+            System.arraycopy(current, index + 1, next, index + 2, current.length - index - 1);
+            shards = next;
+            shard.retired = true;
+        }
+        finally
+        {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces two neighbouring shards with one shard holding the elements of both. The caller holds resizing,
+     * both shards are locked until the new array is published.
+     *
+     * @param current - the array of shards
+     * @param index - the index of the first of the two shards
+     */
+    private void merge(Shard<E>[] current, int index)
+    {
+        Shard<E> first = current[index];
+        Shard<E> second = current[index + 1];
+        first.lock.lock();
+        second.lock.lock();
+        try
+        {
+            ArrayList<E> elements = first.tree.firstK(first.tree.size());
+            elements.addAll(second.tree.firstK(second.tree.size()));
+            Shard<E>[] next = newShards(current.length - 1);
+            System.arraycopy(current, 0, next, 0, index);
+            next[index] = new Shard<E>(first.low, build(elements));
+            System.arraycopy(current, index + 2, next, index + 1, current.length - index - 2);
+            shards = next;
+            first.retired = true;
+            second.retired = true;
+        }
+        finally
+        {
+            second.lock.unlock();
+            first.lock.unlock();
+        }
+    }
+
+    /**
+     * Builds the tree of a shard from elements in ascending order.
+     *
+     * @param elements - the elements in ascending order
+     * @return a new tree holding the elements
+     */
+    private BST<E> build(List<E> elements)
+    {
+        BST<E> tree = new BST<E>(balancing);
+        addMiddleFirst(tree, elements, 0, elements.size() - 1);
+        return tree;
+    }
+
+    /**
+     * Adds the middle element of a run before the two halves around it, so the tree is balanced even with
+     * Balancing.NONE instead of becoming a chain as it would when the elements are added in order.
+     *
+     * @param tree - the tree to fill
+     * @param elements - the elements in ascending order
+     * @param low - the index of the first element of the run
+     * @param high - the index of the last element of the run
+     */
+    private void addMiddleFirst(BST<E> tree, List<E> elements, int low, int high)
+    {
+        if (low > high) return;
+        int mid = (low + high) >>> 1;
+        tree.add(elements.get(mid));
+        addMiddleFirst(tree, elements, low, mid - 1);
+        addMiddleFirst(tree, elements, mid + 1, high);
+    }
+
+    /**
+     * This private class iterates over a range of the set by copying up to CHUNK elements at a time out of the shard
+     * that holds the next element. No lock is held between two calls, every copy looks up the shard again from the last
+     * element returned, so shards may be split or merged while the iteration goes on.
+     */
+    private class RangeIter implements Iterator<E>
+    {
+        private final E end; // the last element of the range, null for no end
+        private ArrayList<E> chunk; // the elements copied out of a shard, null when the iteration is done
+        private int pos = 0; // the index of the next element in chunk
+
+        /**
+         * Constructor that copies the first chunk.
+         *
+         * @param start - the first element of the range, null to start at the smallest element
+         * @param end - the last element of the range, null for no end
+         */
+        RangeIter(E start, E end)
+        {
+            this.end = end;
+            fetch(start, true);
+        }
+
+        /**
+         * Copies the next elements from the first shard that has any at or above the given element.
+         *
+         * @param from - the element to start at, null to start at the smallest element
+         * @param inclusive - false to skip from itself
+         */
+        private void fetch(E from, boolean inclusive)
+        {
+            chunk = null;
+            pos = 0;
+            search: while (true)
+            {
+                Shard<E>[] current = shards;
+                for (int i = (from == null) ? 0 : shardIndex(current, from); i < current.length; i++)
+                {
+                    Shard<E> shard = current[i];
+                    ArrayList<E> found;
+                    shard.lock.lock();
+                    try
+                    {
+                        if (shard.retired) continue search; // the shards changed, look again in the new array
+                        found = (from == null) ? shard.tree.firstK(CHUNK) : shard.tree.ceilingK(from, CHUNK + 1);
+                    }
+                    finally
+                    {
+                        shard.lock.unlock();
+                    }
+                    int first = (!inclusive && !found.isEmpty() && found.get(0).compareTo(from) == 0) ? 1 : 0;
+                    if (found.size() > first)
+                    {
+                        chunk = found;
+                        pos = first;
+                        return;
+                    }
+                }
+                return;
+            }
+        }
+
+        /**
+         * This method returns whether there is another element in the range
+         *
+         * @return boolean true/false if there is another element
+         */
+        public boolean hasNext()
+        {
+            if (chunk == null) return false;
+            if (pos == chunk.size())
+            {
+                fetch(chunk.get(pos - 1), false);
+                if (chunk == null) return false;
+            }
+            if (end != null && chunk.get(pos).compareTo(end) > 0)
+            {
+                chunk = null;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * This method returns the next element in the range
+         *
+         * @throws NoSuchElementException if there is not another element
+         * @return the next element
+         */
+        public E next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException("Next node does not exist.");
+            }
+            return chunk.get(pos++);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package project6;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+
+/**
+ * Records the calls made to a BST into a binary trace file that WorkloadReplay can run again, so a production workload
+ * can be reproduced and measured elsewhere. A tree records its add, remove, contains, ceiling and getRange calls once
+ * it is given a recorder by BST.setRecorder; calls the tree makes to itself are not recorded.
+ *
+ * The keys are either hashed to 64 bit numbers, so the trace does not hold the real keys, or encoded with a KeyCodec.
+ * Hashes are SipHash-2-4 keyed with a random 128 bit secret that every recorder makes for itself and never writes to
+ * the file, so a key cannot be found by hashing guesses and comparing them with the trace, and two traces hash the
+ * same key differently. A hashed trace is replayed with Long keys: equal keys stay equal, so adds, removes and lookups
+ * hit and miss as they did, but the order of the keys is lost and the ranges of ceiling and getRange cover different
+ * elements. Keys are hashed from their hashCode, so keys with the same 32 bit hash code become one key in the trace,
+ * unless a KeyCodec is given and the 64 bit hash is taken over the encoded bytes instead.
+ *
+ * The file starts with the int MAGIC, a version byte and a byte that is HASHED or ENCODED. Every call follows as an
+ * operation byte and its keys, getRange has two: a hashed key is a long, an encoded key is an int length and the bytes.
+ *
+ * @author reemaamhaz
+ */
+public class WorkloadRecorder<E> implements Closeable
+{
+    static final int MAGIC = 0x42535457; // "BSTW"
+    static final byte VERSION = 1; // the version of the file format
+    static final byte HASHED = 0; // the keys are 64 bit hashes
+    static final byte ENCODED = 1; // the keys are encoded with a KeyCodec
+
+    static final byte ADD = 1; // add(key)
+    static final byte REMOVE = 2; // remove(key)
+    static final byte CONTAINS = 3; // contains(key)
+    static final byte CEILING = 4; // ceiling(key)
+    static final byte GET_RANGE = 5; // getRange(start, end)
+
+    private final DataOutputStream out; // the trace file
+    private final KeyCodec<E> codec; // encodes the keys, null if they are hashed from their hashCode
+    private final boolean hashed; // true if the keys are written as 64 bit hashes
+    private final long secret0; // the first half of the SipHash key, never written to the trace
+    private final long secret1; // the second half of the SipHash key, never written to the trace
+    private long records = 0; // the number of calls recorded
+    private boolean closed = false; // set once the file was closed
+
+    /**
+     * Constructs a recorder and writes the header of the trace.
+     *
+     * @param file - the trace file, replaced if it exists
+     * @param codec - encodes the keys, null to hash their hash codes
+     * @param hashed - true to write the keys as 64 bit hashes
+     * @throws IOException if the file cannot be written
+     */
+    private WorkloadRecorder(Path file, KeyCodec<E> codec, boolean hashed) throws IOException
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        this.codec = codec;
+        this.hashed = hashed;
+        SecureRandom random = new SecureRandom();
+        this.secret0 = random.nextLong();
+        this.secret1 = random.nextLong();
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(hashed ? HASHED : ENCODED);
+    }
+
+    /**
+     * Creates a recorder that writes the keys as 64 bit hashes of their hashCode. Keys with the same hash code are
+     * recorded as the same key, use hashed(file, codec) where that matters.
+     *
+     * @param file - the trace file, replaced if it exists
+     * @return the recorder
+     * @throws IOException if the file cannot be written
+     */
+    public static <E> WorkloadRecorder<E> hashed(Path file) throws IOException
+    {
+        if (file == null) throw new NullPointerException("No null file.");
+        return new WorkloadRecorder<E>(file, null, true);
+    }
+
+    /**
+     * Creates a recorder that writes the keys as 64 bit hashes of their encoded bytes, so two different keys only
+     * become one key in the trace if their 64 bit hashes collide.
+     *
+     * @param file - the trace file, replaced if it exists
+     * @param codec - encodes the keys before they are hashed
+     * @return the recorder
+     * @throws IOException if the file cannot be written
+     */
+    public static <E> WorkloadRecorder<E> hashed(Path file, KeyCodec<E> codec) throws IOException
+    {
+        if (file == null) throw new NullPointerException("No null file.");
+        if (codec == null) throw new NullPointerException("No null codec.");
+        return new WorkloadRecorder<E>(file, codec, true);
+    }
+
+    /**
+     * Creates a recorder that writes the keys as they are, encoded with a codec.
+     *
+     * @param file - the trace file, replaced if it exists
+     * @param codec - encodes the keys
+     * @return the recorder
+     * @throws IOException if the file cannot be written
+     */
+    public static <E> WorkloadRecorder<E> encoded(Path file, KeyCodec<E> codec) throws IOException
+    {
+        if (file == null) throw new NullPointerException("No null file.");
+        if (codec == null) throw new NullPointerException("No null codec.");
+        return new WorkloadRecorder<E>(file, codec, false);
+    }
+
+    /**
+     * Records a call with one key, called by the tree.
+     *
+     * @param op - the operation
+     * @param key - the key of the call
+     * @throws UncheckedIOException if the trace cannot be written
+     */
+    synchronized void record(byte op, E key)
+    {
+        if (closed) return;
+        try
+        {
+            out.writeByte(op);
+            writeKey(key);
+            records++;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records a call with two keys, called by the tree.
+     *
+     * @param op - the operation
+     * @param first - the first key of the call
+     * @param second - the second key of the call
+     * @throws UncheckedIOException if the trace cannot be written
+     */
+    synchronized void record(byte op, E first, E second)
+    {
+        if (closed) return;
+        try
+        {
+            out.writeByte(op);
+            writeKey(first);
+            writeKey(second);
+            records++;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a key as a hash or encoded.
+     *
+     * @param key - the key
+     * @throws IOException if the trace cannot be written
+     */
+    private void writeKey(E key) throws IOException
+    {
+        if (hashed)
+        {
+            if (codec == null)
+            {
+                int h = key.hashCode();
+                out.writeLong(hash(new byte[] { (byte) (h >>> 24), (byte) (h >>> 16), (byte) (h >>> 8), (byte) h }));
+            }
+            else
+            {
+                out.writeLong(hash(codec.encode(key)));
+            }
+        }
+        else
+        {
+            byte[] bytes = codec.encode(key);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Hashes a key's bytes to 64 bits with SipHash-2-4 under the secret of this recorder. Without the secret the
+     * hashes cannot be computed for guessed keys, which a plain hash of the hash code or bytes would allow.
+     *
+     * @param bytes - the encoded key or its hash code
+     * @return the 64 bit hash
+     */
+    private long hash(byte[] bytes)
+    {
+        long v0 = secret0 ^ 0x736F6D6570736575L;
+        long v1 = secret1 ^ 0x646F72616E646F6DL;
+        long v2 = secret0 ^ 0x6C7967656E657261L;
+        long v3 = secret1 ^ 0x7465646279746573L;
+        int end = bytes.length - bytes.length % 8;
+        for (int i = 0; i <= end; i += 8)
+        {
+            // every 8 bytes are a little-endian word, the last word holds the rest and the length in its top byte
+            long m = 0;
+            if (i < end)
+            {
+                for (int b = 7; b >= 0; b--)
+                {
+                    m = (m << 8) | (bytes[i + b] & 0xFF);
+                }
+            }
+            else
+            {
+                m = (long) bytes.length << 56;
+                for (int b = bytes.length - 1; b >= end; b--)
+                {
+                    m |= (long) (bytes[b] & 0xFF) << (8 * (b - end));
+                }
+            }
+            v3 ^= m;
+            for (int round = 0; round < 2; round++)
+            {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+        v2 ^= 0xFF;
+        for (int round = 0; round < 4; round++)
+        {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    /**
+     * Returns the number of calls recorded.
+     *
+     * @return the number of records
+     */
+    public synchronized long getRecordCount()
+    {
+        return records;
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     *
+     * @throws IOException if the trace cannot be written
+     */
+    public synchronized void flush() throws IOException
+    {
+        if (!closed) out.flush();
+    }
+
+    /**
+     * Writes the buffered records and closes the file, later calls are not recorded.
+     *
+     * @throws IOException if the trace cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (closed) return;
+        closed = true;
+        out.close();
+    }
+}
@@ -0,0 +1,410 @@
+package project6;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs a trace written by WorkloadRecorder against a BST or a ShardedBST and reports the throughput, a histogram of
+ * the latency of single calls and the shape of the tree at the end, so engines can be compared on real traffic.
+ * The trace is read into memory before the clock starts. With more than one thread the calls are dealt out in turn,
+ * thread t running calls t, t + threads, t + 2 * threads and so on; a BST is then shared behind one lock while
+ * a ShardedBST uses its own locking.
+ *
+ * Usage: java project6.WorkloadReplay trace [engine] [threads] [codec]
+ *   engine - NONE, RED_BLACK, TREAP, SPLAY, SCAPEGOAT or SHARDED, default RED_BLACK
+ *   threads - the number of threads, default 1
+ *   codec - string, integer or long, how the keys of a trace with encoded keys are decoded, default string
+ *
+ * @author reemaamhaz
+ */
+public class WorkloadReplay
+{
+    private static final int SHARD_SIZE = 4096; // the maxShardSize of the SHARDED engine
+    private static final String[] NAMES = { "", "add", "remove", "contains", "ceiling", "getRange" }; // by op byte
+
+    /**
+     * The calls of a trace, read into arrays.
+     */
+    private static class Trace<K>
+    {
+        byte[] ops = new byte[1024]; // the operation of every call
+        Object[] firsts = new Object[1024]; // the first key of every call
+        Object[] seconds = new Object[1024]; // the second key of every call, null for calls with one key
+        int count = 0; // the number of calls
+        int skipped = 0; // getRange calls left out because their hashed keys came out in the wrong order
+
+        /**
+         * Adds a call.
+         *
+         * @param op - the operation
+         * @param first - the first key
+         * @param second - the second key or null
+         */
+        void add(byte op, Object first, Object second)
+        {
+            if (count == ops.length)
+            {
+                ops = Arrays.copyOf(ops, count * 2);
+                firsts = Arrays.copyOf(firsts, count * 2);
+                seconds = Arrays.copyOf(seconds, count * 2);
+            }
+            ops[count] = op;
+            firsts[count] = first;
+            seconds[count] = second;
+            count++;
+        }
+    }
+
+    /**
+     * The structure a trace is run against.
+     */
+    private interface Target<K>
+    {
+        /**
+         * Makes one call.
+         *
+         * @param op - the operation
+         * @param first - the first key
+         * @param second - the second key or null
+         */
+        void apply(byte op, K first, K second);
+
+        /**
+         * Describes the shape of the structure.
+         *
+         * @return the description
+         */
+        String shape();
+    }
+
+    /**
+     * Replays a trace file and describes the results.
+     *
+     * @param file - the trace file
+     * @param engine - NONE, RED_BLACK, TREAP, SPLAY, SCAPEGOAT or SHARDED
+     * @param threads - the number of threads
+     * @param codec - decodes the keys of a trace with encoded keys, not used for hashed keys
+     * @return the report
+     * @throws IOException if the trace cannot be read or is not a trace
+     * @throws IllegalArgumentException if the engine is not known or threads is less than 1
+     */
+    public static <K extends Comparable<K>> String replay(Path file, String engine, int threads, KeyCodec<K> codec)
+            throws IOException
+    {
+        if (threads < 1) throw new IllegalArgumentException("There must be at least 1 thread.");
+        Trace<K> trace = read(file, codec);
+        Target<K> target = target(engine, threads);
+        return run(trace, target, engine, threads);
+    }
+
+    /**
+     * Reads a trace file. A record that was cut off at the end of the file, because the recorder was not closed,
+     * is left out, and so is a getRange call whose hashed keys are in the wrong order since no tree can run it.
+     *
+     * @param file - the trace file
+     * @param codec - decodes the keys of a trace with encoded keys
+     * @return the calls of the trace
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    private static <K> Trace<K> read(Path file, KeyCodec<K> codec) throws IOException
+    {
+        Trace<K> trace = new Trace<K>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024)))
+        {
+            if (in.readInt() != WorkloadRecorder.MAGIC) throw new IOException("Not a workload trace: " + file);
+            byte version = in.readByte();
+            if (version != WorkloadRecorder.VERSION) throw new IOException("Unknown trace version " + version);
+            boolean hashed = in.readByte() == WorkloadRecorder.HASHED;
+            if (!hashed && codec == null) throw new IOException("The trace has encoded keys, a codec is needed.");
+
+            int op;
+            while ((op = in.read()) != -1)
+            {
+                if (op < WorkloadRecorder.ADD || op > WorkloadRecorder.GET_RANGE)
+                {
+                    throw new IOException("Unknown operation " + op + " in record " + trace.count);
+                }
+                try
+                {
+                    Object first = readKey(in, hashed, codec);
+                    Object second = (op == WorkloadRecorder.GET_RANGE) ? readKey(in, hashed, codec) : null;
+                    if (hashed && second != null && (Long) first > (Long) second)
+                    {
+                        trace.skipped++;
+                    }
+                    else
+                    {
+                        trace.add((byte) op, first, second);
+                    }
+                }
+                catch (EOFException e)
+                {
+                    break; // the last record was only partly written
+                }
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Reads one key.
+     *
+     * @param in - the trace
+     * @param hashed - true if the keys are hashes
+     * @param codec - decodes encoded keys
+     * @return the key, a Long for a hashed key
+     * @throws IOException if the trace cannot be read
+     */
+    private static Object readKey(DataInputStream in, boolean hashed, KeyCodec<?> codec) throws IOException
+    {
+        if (hashed) return in.readLong();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return codec.decode(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Creates the structure to run a trace against.
+     *
+     * @param engine - NONE, RED_BLACK, TREAP, SPLAY, SCAPEGOAT or SHARDED
+     * @param threads - the number of threads that will use it
+     * @return the target
+     */
+    private static <K extends Comparable<K>> Target<K> target(String engine, int threads)
+    {
+        if (engine.equalsIgnoreCase("SHARDED"))
+        {
+            ShardedBST<K> sharded = new ShardedBST<K>(BST.Balancing.RED_BLACK, SHARD_SIZE);
+            return new Target<K>()
+            {
+                public void apply(byte op, K first, K second)
+                {
+                    switch (op)
+                    {
+                        case WorkloadRecorder.ADD: sharded.add(first); break;
+                        case WorkloadRecorder.REMOVE: sharded.remove(first); break;
+                        case WorkloadRecorder.CONTAINS: sharded.contains(first); break;
+                        case WorkloadRecorder.CEILING: sharded.ceiling(first); break;
+                        default: sharded.getRange(first, second); break;
+                    }
+                }
+
+                public String shape()
+                {
+                    return "size " + sharded.size() + ", shards " + sharded.shardCount();
+                }
+            };
+        }
+
+        BST<K> tree = new BST<K>(BST.Balancing.valueOf(engine.toUpperCase()));
+        Object lock = (threads > 1) ? tree : null; // a BST is not thread safe, so threads take turns
+        return new Target<K>()
+        {
+            public void apply(byte op, K first, K second)
+            {
+                if (lock == null)
+                {
+                    call(op, first, second);
+                    return;
+                }
+                synchronized (lock)
+                {
+                    call(op, first, second);
+                }
+            }
+
+            private void call(byte op, K first, K second)
+            {
+                switch (op)
+                {
+                    case WorkloadRecorder.ADD: tree.add(first); break;
+                    case WorkloadRecorder.REMOVE: tree.remove(first); break;
+                    case WorkloadRecorder.CONTAINS: tree.contains(first); break;
+                    case WorkloadRecorder.CEILING: tree.ceiling(first); break;
+                    default: tree.getRange(first, second); break;
+                }
+            }
+
+            public String shape()
+            {
+                int size = tree.size();
+                int log2 = 32 - Integer.numberOfLeadingZeros(size); // the height of a perfectly balanced tree
+                return "size " + size + ", height " + tree.height() + ", log2(size + 1) " + log2
+                        + String.format(", height / log2 %.2f", log2 == 0 ? 0.0 : (double) tree.height() / log2);
+            }
+        };
+    }
+
+    /**
+     * Runs a trace and describes the results. Every thread keeps its own histogram, bucket b counting the calls
+     * that took from 2^(b-1) up to 2^b nanoseconds.
+     *
+     * @param trace - the calls
+     * @param target - the structure
+     * @param engine - the name of the engine
+     * @param threads - the number of threads
+     * @return the report
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<K>> String run(Trace<K> trace, Target<K> target, String engine, int threads)
+    {
+        long[][] histograms = new long[threads][64];
+        long[] opCounts = new long[NAMES.length];
+        RuntimeException[] failures = new RuntimeException[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Thread> workers = new ArrayList<Thread>(threads);
+        for (int t = 0; t < threads; t++)
+        {
+            final int first = t;
+            Thread worker = new Thread(() ->
+            {
+                long[] histogram = histograms[first];
+                try
+                {
+                    start.await();
+                    for (int i = first; i < trace.count; i += threads)
+                    {
+                        long begin = System.nanoTime();
+                        target.apply(trace.ops[i], (K) trace.firsts[i], (K) trace.seconds[i]);
+                        long took = System.nanoTime() - begin;
+                        histogram[64 - Long.numberOfLeadingZeros(Math.max(took, 0))]++;
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (RuntimeException e)
+                {
+                    failures[first] = e;
+                }
+            }, "replay-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers)
+        {
+            try
+            {
+                worker.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while replaying.", e);
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+        for (RuntimeException failure : failures)
+        {
+            if (failure != null) throw failure;
+        }
+
+        long[] histogram = new long[64];
+        for (long[] h : histograms)
+        {
+            for (int b = 0; b < 64; b++)
+            {
+                histogram[b] += h[b];
+            }
+        }
+        for (int i = 0; i < trace.count; i++)
+        {
+            opCounts[trace.ops[i]]++;
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("engine %s, threads %d, calls %d%n", engine, threads, trace.count));
+        for (int op = 1; op < NAMES.length; op++)
+        {
+            if (opCounts[op] > 0) report.append(String.format("  %-9s %d%n", NAMES[op], opCounts[op]));
+        }
+        if (trace.skipped > 0)
+        {
+            report.append(String.format("  skipped %d getRange calls whose hashed keys are out of order%n", trace.skipped));
+        }
+        double seconds = elapsed / 1e9;
+        report.append(String.format("time %.3f s, throughput %.0f calls/s%n", seconds, trace.count / Math.max(seconds, 1e-9)));
+        report.append(String.format("latency p50 < %s, p90 < %s, p99 < %s, p99.9 < %s%n", percentile(histogram, trace.count, 0.5),
+                percentile(histogram, trace.count, 0.9), percentile(histogram, trace.count, 0.99),
+                percentile(histogram, trace.count, 0.999)));
+        for (int b = 0; b < 64; b++)
+        {
+            if (histogram[b] > 0) report.append(String.format("  < %-8s %d%n", nanos(b), histogram[b]));
+        }
+        report.append("shape ").append(target.shape()).append(String.format("%n"));
+        return report.toString();
+    }
+
+    /**
+     * Finds the bucket a share of the calls falls below.
+     *
+     * @param histogram - the calls per bucket
+     * @param total - the number of calls
+     * @param share - the share, such as 0.99
+     * @return the upper bound of the bucket
+     */
+    private static String percentile(long[] histogram, long total, double share)
+    {
+        long seen = 0;
+        for (int b = 0; b < 64; b++)
+        {
+            seen += histogram[b];
+            if (seen > 0 && seen >= share * total) return nanos(b);
+        }
+        return "-";
+    }
+
+    /**
+     * Formats the upper bound of a bucket.
+     *
+     * @param bucket - the bucket
+     * @return 2^bucket nanoseconds in a readable unit
+     */
+    private static String nanos(int bucket)
+    {
+        double ns = Math.pow(2, bucket);
+        if (ns < 1e3) return String.format("%.0fns", ns);
+        if (ns < 1e6) return String.format("%.0fus", ns / 1e3);
+        if (ns < 1e9) return String.format("%.0fms", ns / 1e6);
+        return String.format("%.0fs", ns / 1e9);
+    }
+
+    /**
+     * Replays a trace from the command line and prints the report.
+     *
+     * @param args - trace [engine] [threads] [codec]
+     * @throws IOException if the trace cannot be read
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: java project6.WorkloadReplay trace [NONE|RED_BLACK|TREAP|SPLAY|SCAPEGOAT|SHARDED] "
+                    + "[threads] [string|integer|long]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[0]);
+        String engine = (args.length > 1) ? args[1] : "RED_BLACK";
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+        String codec = (args.length > 3) ? args[3].toLowerCase() : "string";
+        switch (codec)
+        {
+            case "integer": System.out.print(replay(file, engine, threads, KeyCodec.INTEGER)); break;
+            case "long": System.out.print(replay(file, engine, threads, KeyCodec.LONG)); break;
+            default: System.out.print(replay(file, engine, threads, KeyCodec.STRING)); break;
+        }
+    }
+}